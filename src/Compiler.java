@@ -1,8 +1,6 @@
-import backend.CodeGen;
-import backend.RegAllocate;
 import frontend.parser.SysYLexer;
 import frontend.parser.SysYParser;
-import frontend.parser.Visitor;
+import manager.CompilationContext;
 import manager.Manager;
 
 import midend.MidEndRunner;
@@ -12,48 +10,174 @@ import org.antlr.v4.runtime.tree.ParseTree;
 import util.Arg;
 import util.OutputHandler;
 
+import java.io.BufferedReader;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class Compiler {
 
     public static void main(String[] args) {
+        if (args.length == 1 && args[0].startsWith("-daemon")) {
+            daemon(args[0]);
+            return;
+        }
         Arg arg = Arg.parse(args);
         try {
-            var input = CharStreams.fromFileName(arg.srcFile);
-            SysYLexer lexer = new SysYLexer(input);
-            CommonTokenStream tokens = new CommonTokenStream(lexer);
-            SysYParser parser = new SysYParser(tokens);
-            ParseTree tree = parser.compUnit();
-            var visitor = Visitor.Instance;
-            visitor.visit(tree);
-
-            // 输出 LLVM
-            if (!arg.llvmFile.isEmpty()) {
-                FileOutputStream llvmOut = OutputHandler.getOutputFile(arg.llvmFile);
-                Manager.getManager().outputLLVM(llvmOut);
-                OutputHandler.closeOutputFile(llvmOut);
-            }
+            compile(arg);
+        } catch (UncheckedIOException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    // 每次编译使用新的上下文，不同线程上的编译互不影响
+    private static void compile(Arg arg) {
+        CompilationContext context = new CompilationContext(arg);
+        try {
+            context.run(() -> {
+                try {
+                    compile(context);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void compile(CompilationContext context) throws IOException {
+        Arg arg = context.getArg();
+        Manager manager = context.getManager();
+        var input = CharStreams.fromFileName(arg.srcFile);
+        SysYLexer lexer = new SysYLexer(input);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        context.stage("lex", tokens::fill);
+        SysYParser parser = new SysYParser(tokens);
+        ParseTree[] tree = new ParseTree[1];
+        context.stage("parse", () -> tree[0] = parser.compUnit());
+        if (context.getCache() != null)
+            context.stage("cache-keys", () -> context.getCache().computeKeys(tree[0]));
+        var visitor = context.getVisitor();
+        context.stage("visit", () -> visitor.visit(tree[0]));
 
-            var midEndRunner = new MidEndRunner(Manager.getFunctions(), Manager.getGlobals(), arg.opt);
-            midEndRunner.run();
+        var midEndRunner = new MidEndRunner(manager.getFunctions(), manager.getGlobals(), arg);
+        midEndRunner.run();
+
+        // 输出 LLVM
+        if (!arg.llvmFile.isEmpty()) {
+            FileOutputStream llvmOut = OutputHandler.getOutputFile(arg.llvmFile);
+            context.stage("emit-llvm", () -> manager.outputLLVM(llvmOut));
+            OutputHandler.closeOutputFile(llvmOut);
+        }
 
-            var codeGen = CodeGen.Instance;
-            codeGen.gen();
+        var codeGen = context.getCodeGen();
+        context.stage("codegen", codeGen::gen);
 
-            var regAllocate = RegAllocate.Instance;
-            regAllocate.alloc();
+        var regAllocate = context.getRegAllocate();
+        context.stage("regalloc", regAllocate::alloc);
 
-            // 输出 机器代码arm
-            if (!arg.targetFile.isEmpty()){
-                FileOutputStream armOut = OutputHandler.getOutputFile(arg.targetFile);
-            Manager.getManager().outputArm(armOut);
+        // 输出 机器代码arm
+        if (!arg.targetFile.isEmpty()) {
+            FileOutputStream armOut = OutputHandler.getOutputFile(arg.targetFile);
+            context.stage("emit-arm", () -> manager.outputArm(armOut));
             OutputHandler.closeOutputFile(armOut);
-            }
+        }
 
+        if (context.getTimeReport() != null)
+            context.getTimeReport().output(arg.timeReport);
+    }
+
+    /**
+     * 常驻模式：JVM和ANTLR的预测缓存(静态的DFA，所有编译共享)只预热一次，之后连续处理多个编译任务
+     * -daemon 从标准输入读任务，-daemon=port 监听127.0.0.1:port，每个连接可以发送多个任务
+     * 每行是一次普通调用的命令行参数(以空白分隔)，每个任务回复一行：ok 毫秒数 或 error 原因
+     * 任务在线程池上并行编译，各自使用独立的CompilationContext，回复按任务的提交顺序写出
+     * 空行或quit结束当前输入，socket模式下收到shutdown时退出
+     */
+    private static void daemon(String option) {
+        try {
+            if (option.equals("-daemon")) {
+                serve(System.in, System.out);
+                return;
+            }
+            int port = Integer.parseInt(option.substring("-daemon=".length()));
+            try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+                System.err.println("listening on 127.0.0.1:" + server.getLocalPort());
+                while (true) {
+                    try (Socket socket = server.accept()) {
+                        if (!serve(socket.getInputStream(), socket.getOutputStream()))
+                            break;
+                    }
+                }
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
+    }
 
+    // 处理一个输入流上的所有任务，收到shutdown时返回false
+    private static boolean serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        PrintStream writer = new PrintStream(out, true, StandardCharsets.UTF_8);
+        ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        // 单线程按提交顺序等待任务完成并写回复，读取下一行不会被未完成的任务阻塞
+        ExecutorService replier = Executors.newSingleThreadExecutor();
+        boolean keepRunning = true;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.equals("quit"))
+                    break;
+                if (line.equals("shutdown")) {
+                    keepRunning = false;
+                    break;
+                }
+                String[] args = line.split("\\s+");
+                Future<String> result = workers.submit(() -> runJob(args));
+                replier.submit(() -> {
+                    try {
+                        writer.println(result.get());
+                    } catch (InterruptedException | ExecutionException e) {
+                        writer.println("error " + e);
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+            replier.shutdown();
+            try {
+                replier.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return keepRunning;
+    }
+
+    private static String runJob(String[] args) {
+        long start = System.nanoTime();
+        try {
+            compile(Arg.parse(args));
+            return "ok " + (System.nanoTime() - start) / 1000000;
+        } catch (Throwable e) {
+            // 出错的任务只影响自己的上下文
+            Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+            return "error " + String.valueOf(cause).replace('\n', ' ');
+        }
     }
 }
@@ -1,19 +1,21 @@
 package backend;
 
-import com.sun.jdi.FloatType;
 import frontend.semantic.OpTree;
 import ir.*;
 import ir.instruction.*;
+import ir.type.ArrayType;
+import ir.type.FloatType;
 import ir.type.Int32Type;
 import ir.type.PointerType;
+import ir.type.Type;
 import lir.McBlock;
 import lir.McFunction;
 import lir.Operand;
-import lir.mcInstr.MCShift;
-import lir.mcInstr.McBinary;
-import lir.mcInstr.McCmp;
-import lir.mcInstr.McMove;
+import lir.mcInstr.*;
+import manager.CompilationContext;
 import manager.Manager;
+import manager.OutputCache;
+import util.IntMap;
 import util.MyList;
 
 import java.util.ArrayList;
@@ -23,60 +25,170 @@ import java.util.Iterator;
 public class CodeGen {
     public static boolean isOptMulDiv = true;
 
-    private static final HashMap<String, Function> functions = Manager.getFunctions();
-    private static final ArrayList<GlobalValue> globals = Manager.getGlobals();
-    public static final CodeGen Instance = new CodeGen();
-    private static final HashMap<Function, McFunction> funcMap = new HashMap<>();
-    private static final HashMap<BasicBlock, McBlock> blockMap = new HashMap<>();
-    private ArrayList<McFunction> mcFunctions = new ArrayList<>();
-    private static Function curFunc;
-    private static McFunction curMcFunc;
+    private final HashMap<String, Function> functions;
+    private final ArrayList<GlobalValue> globals;
+    private final HashMap<Function, McFunction> funcMap;
+    // 以基本块编号为下标
+    private final IntMap<McBlock> blockMap = new IntMap<>();
+    private final ArrayList<McFunction> mcFunctions = new ArrayList<>();
+    private Function curFunc;
+    private McFunction curMcFunc;
     private McBlock curMcBlock;
 
-    private HashMap<Value, Operand> value2opd = new HashMap<>();
-    private HashMap<OpTree.Operator, McCmp.Cond> op2cond = new HashMap<>();
+    // 全局变量的操作数在各函数间共享，形参和指令的操作数以其在函数内的编号为下标
+    private final HashMap<GlobalValue, Operand> global2opd;
+    private final IntMap<Operand> value2opd = new IntMap<>();
+    private final HashMap<OpTree.Operator, McCmp.Cond> op2cond;
+    private final HashMap<OpTree.Operator, McCmp.Cond> op2fcond;
+    // alloca相对sp的偏移
+    private HashMap<Alloc, Integer> allocOffset = new HashMap<>();
+    // 最近一次比较指令及其条件，紧随其后的跳转可以直接使用标志位
+    private Instr lastCmp;
+    private McCmp.Cond lastCond;
 
 
+    public CodeGen(Manager manager){
+        this.functions = manager.getFunctions();
+        this.globals = manager.getGlobals();
+        this.funcMap = new HashMap<>();
+        this.global2opd = new HashMap<>();
+        this.op2cond = new HashMap<>();
+        this.op2fcond = new HashMap<>();
+        op2cond.put(OpTree.Operator.Eq, McCmp.Cond.Eq);
+        op2cond.put(OpTree.Operator.Ne, McCmp.Cond.Ne);
+        op2cond.put(OpTree.Operator.Lt, McCmp.Cond.Lt);
+        op2cond.put(OpTree.Operator.Le, McCmp.Cond.Le);
+        op2cond.put(OpTree.Operator.Gt, McCmp.Cond.Gt);
+        op2cond.put(OpTree.Operator.Ge, McCmp.Cond.Ge);
+        op2fcond.put(OpTree.Operator.Eq, McCmp.Cond.Eq);
+        op2fcond.put(OpTree.Operator.Ne, McCmp.Cond.Ne);
+        op2fcond.put(OpTree.Operator.Lt, McCmp.Cond.Mi);
+        op2fcond.put(OpTree.Operator.Le, McCmp.Cond.Ls);
+        op2fcond.put(OpTree.Operator.Gt, McCmp.Cond.Gt);
+        op2fcond.put(OpTree.Operator.Ge, McCmp.Cond.Ge);
+    }
+
+    // 为一个函数做指令选择的CodeGen，只读共享函数表、全局变量的操作数和条件码表，当前函数的状态各自独立
+    private CodeGen(CodeGen parent){
+        this.functions = parent.functions;
+        this.globals = parent.globals;
+        this.funcMap = parent.funcMap;
+        this.op2cond = parent.op2cond;
+        this.op2fcond = parent.op2fcond;
+        this.global2opd = parent.global2opd;
+    }
 
-    private CodeGen(){
+    public ArrayList<McFunction> getMcFunctions() {
+        return mcFunctions;
     }
 
+    // 先按函数表的顺序建好所有McFunction，再并行为各函数做指令选择，输出顺序与并行无关
+    // 汇编文本在缓存中命中的函数不做指令选择
     public void gen(){
         globalGen();
+        OutputCache cache = CompilationContext.current().getCache();
+        ArrayList<Function> defined = new ArrayList<>();
         for(Function function: functions.values()){
             McFunction mcFunction = new McFunction(function);
             funcMap.put(function, mcFunction);
+            if(!function.isExternal()){
+                mcFunctions.add(mcFunction);
+                String text = cache == null ? null : cache.lookup(function, "s");
+                if (text != null)
+                    mcFunction.setCachedText(text);
+                else
+                    defined.add(function);
+            }
         }
-        for(Function function: functions.values()){
-            if(function.isExternal())
-                continue;
-            curMcFunc = funcMap.get(function);
-            mcFunctions.add(curMcFunc);
-            curFunc = function;
-            boolean isMain = false;
-            if(curFunc.getName().equals("main")){
-                isMain = true;
-                curMcFunc.isMain = true;
-            }
-            MyList<BasicBlock> bList = curFunc.getBasicBlocks();
-            Iterator<BasicBlock> iter = bList.iterator();
-            // 实现构造出McBlock,使得其能被跳转指令找到
-            while(iter.hasNext()){
-                BasicBlock basicBlock = iter.next();
-                McBlock mcBlock = new McBlock(basicBlock);
-                blockMap.put(basicBlock, mcBlock);
-            }
-            iter = bList.iterator();
-            while (iter.hasNext()){
-                BasicBlock basicBlock = iter.next();
-                genBasicBlock(basicBlock);
+        CompilationContext.current().parallelForEach(defined, function -> new CodeGen(this).genFunction(function));
+    }
+
+    private void genFunction(Function function){
+        curMcFunc = funcMap.get(function);
+        curFunc = function;
+        boolean isMain = false;
+        if(curFunc.getName().equals("main")){
+            isMain = true;
+            curMcFunc.isMain = true;
+        }
+        MyList<BasicBlock> bList = curFunc.getBasicBlocks();
+        Iterator<BasicBlock> iter = bList.iterator();
+        // 实现构造出McBlock,使得其能被跳转指令找到
+        while(iter.hasNext()){
+            BasicBlock basicBlock = iter.next();
+            McBlock mcBlock = new McBlock(basicBlock);
+            mcBlock.setMcFunction(curMcFunc);
+            curMcFunc.addMcBlock(mcBlock);
+            blockMap.put(basicBlock.getLabel(), mcBlock);
+        }
+        genFrame();
+        iter = bList.iterator();
+        while (iter.hasNext()){
+            BasicBlock basicBlock = iter.next();
+            genBasicBlock(basicBlock);
+        }
+        genPhiCopies();
+    }
+
+    // 预先计算调用参数区和alloca区的大小，使alloca的偏移在指令选择时即可确定
+    private void genFrame(){
+        int maxOutArgs = 0;
+        for(BasicBlock basicBlock: curFunc.getBasicBlocks()){
+            for(Instr instr: basicBlock.getInstrs()){
+                if(instr instanceof Call){
+                    maxOutArgs = Math.max(maxOutArgs, countStackArgs(((Call) instr).getParams()));
+                }
+            }
+        }
+        curMcFunc.setOutArgSize(maxOutArgs * 4);
+        for(BasicBlock basicBlock: curFunc.getBasicBlocks()){
+            for(Instr instr: basicBlock.getInstrs()){
+                if(instr instanceof Alloc){
+                    Type type = instr.getType().getBasicType();
+                    int size = type instanceof ArrayType ? ((ArrayType) type).getFattenSize() * 4 : 4;
+                    allocOffset.put((Alloc) instr, curMcFunc.allocStack(size));
+                }
+            }
+        }
+    }
+
+    private int countStackArgs(ArrayList<Value> params){
+        int intCnt = 0, floatCnt = 0, stackCnt = 0;
+        for(Value param: params){
+            if(param.getType() instanceof FloatType){
+                if(floatCnt++ >= 16)
+                    stackCnt++;
+            } else {
+                if(intCnt++ >= 4)
+                    stackCnt++;
+            }
+        }
+        return stackCnt;
+    }
+
+    // 入口块中将参数从r0-r3/s0-s15或者栈上取出
+    private void genParams(){
+        int intCnt = 0, floatCnt = 0, stackCnt = 0;
+        for(Function.Param param: curFunc.getParams()){
+            Operand dst = getOperand(param);
+            if(param.getType() instanceof FloatType && floatCnt < 16){
+                new McMove(dst, Operand.PhyReg.getFloatReg(floatCnt++), curMcBlock);
+            } else if(!(param.getType() instanceof FloatType) && intCnt < 4){
+                new McMove(dst, Operand.PhyReg.getIntReg(intCnt++), curMcBlock);
+            } else {
+                McLoad load = new McLoad(dst, Operand.PhyReg.sp(), 4 * stackCnt++, curMcBlock);
+                curMcFunc.addParamLoad(load);
             }
         }
     }
 
     public void genBasicBlock(BasicBlock basicBlock){
-        curMcBlock = blockMap.get(basicBlock);
+        curMcBlock = blockMap.get(basicBlock.getLabel());
         curMcBlock.setMcFunction(curMcFunc);
+        lastCmp = null;
+        if(basicBlock == curFunc.getBasicBlocks().getFirst()){
+            genParams();
+        }
         MyList<Instr> instrs = basicBlock.getInstrs();
         for(Instr instr:instrs){
             if(instr instanceof Binary){
@@ -84,90 +196,342 @@ public class CodeGen {
             }
             else if(instr instanceof Icmp || instr instanceof Fcmp) {
                 genCmp(instr);
+                continue;
             }
             else if(instr instanceof Branch) {
-                Value cond = ((Branch) instr).getCond();
-                McBlock thenBlock = blockMap.get(((Branch) instr).getThenBlock());
-                McBlock elseBlock = blockMap.get(((Branch) instr).getThenBlock());
-                thenBlock.addPreMcBlock(curMcBlock);
-                elseBlock.addPreMcBlock(curMcBlock);
-
+                genBranch((Branch) instr);
+                break;
+            }
+            else if(instr instanceof Jump) {
+                McBlock target = blockMap.get(((Jump) instr).getTargetBlock().getLabel());
+                target.addPreMcBlock(curMcBlock);
+                new McJump(target, curMcBlock);
+                break;
+            }
+            else if(instr instanceof Return) {
+                genReturn((Return) instr);
+                break;
             }
             else if(instr instanceof BitCast) {
                 Operand opd = getOperand(instr.getUse(0));
-                value2opd.put(instr, opd);
+                value2opd.put(instr.getIndex(), opd);
             }
-            else if(instr instanceof Alloc) {
-
+            else if(instr instanceof Zext) {
+                // i1在寄存器中已经是0/1
+                Operand opd = getRegOperand(((Zext) instr).getValue());
+                new McMove(getOperand(instr), opd, curMcBlock);
+            }
+            else if(instr instanceof Sitofp) {
+                Operand src = getRegOperand(instr.getUse(0));
+                Operand tmp = new Operand.VirtualReg(true, curMcFunc);
+                new McMove(tmp, src, curMcBlock);
+                new McConvert(getOperand(instr), tmp, true, curMcBlock);
+            }
+            else if(instr instanceof Fptosi) {
+                Operand src = getRegOperand(instr.getUse(0));
+                Operand tmp = new Operand.VirtualReg(true, curMcFunc);
+                new McConvert(tmp, src, false, curMcBlock);
+                new McMove(getOperand(instr), tmp, curMcBlock);
+            }
+            else if(instr instanceof Unary) {
+                genUnary((Unary) instr);
+            }
+            else if(instr instanceof Load) {
+                genLoad((Load) instr);
+            }
+            else if(instr instanceof Store) {
+                genStore((Store) instr);
+            }
+            else if(instr instanceof GetElementPtr) {
+                genGetElementPtr((GetElementPtr) instr);
+            }
+            else if(instr instanceof Call) {
+                genCall((Call) instr);
+            }
+            else if(instr instanceof Alloc || instr instanceof Phi) {
+                // alloca的偏移已在genFrame中确定，phi在genPhiCopies中处理
             }
             else {
                 System.err.println("存在ir类型" + instr.getClass() + "未被解析为lir");
             }
+            lastCmp = null;
         }
     }
 
     public void genCmp(Instr instr) {
         Operand dst = getOperand(instr);
+        McCmp.Cond cond;
         if(instr instanceof Icmp){
             Icmp icmp = (Icmp) instr;
             Value left = icmp.getLhs();
             Value right = icmp.getRhs();
-            Operand lopd = getOperand(left);
+            Operand lopd = getRegOperand(left);
             Operand ropd = getOperand(right);
-            McCmp.Cond cond = op2cond.get(icmp.getOp());
+            cond = op2cond.get(icmp.getOp());
+            new McCmp(lopd, ropd, curMcBlock);
         } else {
             assert instr instanceof Fcmp;
             Fcmp fcmp = (Fcmp) instr;
+            Operand lopd = getRegOperand(fcmp.getLhs());
+            Operand ropd = getRegOperand(fcmp.getRhs());
+            cond = op2fcond.get(fcmp.getOp());
+            new McCmp(lopd, ropd, curMcBlock);
+        }
+        // 传送指令不影响标志位，因此总是可以物化比较结果
+        new McMove(dst, new Operand.Imm(0), curMcBlock);
+        new McMove(dst, new Operand.Imm(1), cond, curMcBlock);
+        lastCmp = instr;
+        lastCond = cond;
+    }
+
+    private void genBranch(Branch branch){
+        McBlock thenBlock = blockMap.get(branch.getThenBlock().getLabel());
+        McBlock elseBlock = blockMap.get(branch.getElseBlock().getLabel());
+        thenBlock.addPreMcBlock(curMcBlock);
+        elseBlock.addPreMcBlock(curMcBlock);
+        McCmp.Cond cond;
+        if(branch.getCond() == lastCmp){
+            cond = lastCond;
+        } else {
+            new McCmp(getRegOperand(branch.getCond()), new Operand.Imm(0), curMcBlock);
+            cond = McCmp.Cond.Ne;
+        }
+        new McBranch(cond, thenBlock, curMcBlock);
+        new McJump(elseBlock, curMcBlock);
+    }
+
+    private void genReturn(Return ret){
+        Value value = ret.getReturnValue();
+        Operand retReg = null;
+        if(value != null){
+            if(value.getType() instanceof FloatType)
+                retReg = Operand.PhyReg.getFloatReg(0);
+            else
+                retReg = Operand.PhyReg.getIntReg(0);
+            new McMove(retReg, getOperand(value), curMcBlock);
+        }
+        new McReturn(retReg, curMcBlock);
+    }
+
+    private void genUnary(Unary unary){
+        Value val = unary.getVal();
+        Operand dst = getOperand(unary);
+        if(unary.getOp() == OpTree.Operator.Neg){
+            Operand src = getRegOperand(val);
+            if(val.getType() instanceof FloatType){
+                new McBinary(McBinary.BinaryType.Neg, dst, src, src, curMcBlock);
+            } else {
+                new McBinary(McBinary.BinaryType.Rsb, dst, src, new Operand.Imm(0), curMcBlock);
+            }
+        } else {
+            assert unary.getOp() == OpTree.Operator.Not;
+            Operand src = getRegOperand(val);
+            if(val.getType() instanceof FloatType){
+                new McCmp(src, getRegOperand(Variable.ConstFloat.get(0)), curMcBlock);
+            } else {
+                new McCmp(src, new Operand.Imm(0), curMcBlock);
+            }
+            new McMove(dst, new Operand.Imm(0), curMcBlock);
+            new McMove(dst, new Operand.Imm(1), McCmp.Cond.Eq, curMcBlock);
+        }
+    }
+
+    private void genLoad(Load load){
+        Value pointer = load.getPointer();
+        Operand dst = getOperand(load);
+        if(pointer instanceof Alloc){
+            new McLoad(dst, Operand.PhyReg.sp(), allocOffset.get(pointer), curMcBlock);
+        } else {
+            new McLoad(dst, getRegOperand(pointer), 0, curMcBlock);
         }
     }
 
+    private void genStore(Store store){
+        Value pointer = store.getAddress();
+        Operand src = getRegOperand(store.getValue());
+        if(pointer instanceof Alloc){
+            new McStore(src, Operand.PhyReg.sp(), allocOffset.get(pointer), curMcBlock);
+        } else {
+            new McStore(src, getRegOperand(pointer), 0, curMcBlock);
+        }
+    }
+
+    private void genGetElementPtr(GetElementPtr gep){
+        Operand dst = getOperand(gep);
+        Value pointer = gep.getPointer();
+        Type type = pointer.getType().getBasicType();
+        // 常量下标累加到offset中，变量下标逐个乘以步长后累加
+        int offset = 0;
+        Operand base;
+        if(pointer instanceof Alloc){
+            base = Operand.PhyReg.sp();
+            offset = allocOffset.get(pointer);
+        } else {
+            base = getRegOperand(pointer);
+        }
+        boolean first = true;
+        for(Value idx: gep.getIdxList()){
+            if(!first)
+                type = type.getBasicType();
+            first = false;
+            int size = type instanceof ArrayType ? ((ArrayType) type).getFattenSize() * 4 : 4;
+            if(idx instanceof Variable.ConstInt){
+                offset += ((Variable.ConstInt) idx).getIntVal() * size;
+                continue;
+            }
+            Operand idxOpd = getRegOperand(idx);
+            Operand tmp = new Operand.VirtualReg(false, curMcFunc);
+            if((size & (size - 1)) == 0){
+                int sh = Integer.numberOfTrailingZeros(size);
+                new McBinary(McBinary.BinaryType.Add, tmp, base, idxOpd,
+                        new MCShift(MCShift.ShiftType.lsl, new Operand.Imm(sh)), curMcBlock);
+            } else {
+                Operand mul = new Operand.VirtualReg(false, curMcFunc);
+                new McBinary(McBinary.BinaryType.Mul, mul, idxOpd, getRegOperand(Variable.ConstInt.get(size)), curMcBlock);
+                new McBinary(McBinary.BinaryType.Add, tmp, base, mul, curMcBlock);
+            }
+            base = tmp;
+        }
+        addImm(dst, base, offset);
+    }
+
+    // dst = src + imm，imm无法编码时先放入寄存器
+    private void addImm(Operand dst, Operand src, int imm){
+        if(imm == 0){
+            new McMove(dst, src, curMcBlock);
+        } else if(canImmSaved(imm)){
+            new McBinary(McBinary.BinaryType.Add, dst, src, new Operand.Imm(imm), curMcBlock);
+        } else if(canImmSaved(-imm)){
+            new McBinary(McBinary.BinaryType.Sub, dst, src, new Operand.Imm(-imm), curMcBlock);
+        } else {
+            new McBinary(McBinary.BinaryType.Add, dst, src, getRegOperand(Variable.ConstInt.get(imm)), curMcBlock);
+        }
+    }
+
+    private void genCall(Call call){
+        McFunction callee = funcMap.get(call.getFunction());
+        ArrayList<Operand> argRegs = new ArrayList<>();
+        ArrayList<Operand> argSrcs = new ArrayList<>();
+        int intCnt = 0, floatCnt = 0, stackCnt = 0;
+        for(Value param: call.getParams()){
+            Operand src = getRegOperand(param);
+            if(param.getType() instanceof FloatType && floatCnt < 16){
+                argRegs.add(Operand.PhyReg.getFloatReg(floatCnt++));
+                argSrcs.add(src);
+            } else if(!(param.getType() instanceof FloatType) && intCnt < 4){
+                argRegs.add(Operand.PhyReg.getIntReg(intCnt++));
+                argSrcs.add(src);
+            } else {
+                new McStore(src, Operand.PhyReg.sp(), 4 * stackCnt++, curMcBlock);
+            }
+        }
+        for(int i = 0; i < argRegs.size(); i++){
+            new McMove(argRegs.get(i), argSrcs.get(i), curMcBlock);
+        }
+        new McCall(callee, argRegs, curMcBlock);
+        if(call.getType() instanceof FloatType){
+            new McMove(getOperand(call), Operand.PhyReg.getFloatReg(0), curMcBlock);
+        } else if(call.getType() instanceof Int32Type){
+            new McMove(getOperand(call), Operand.PhyReg.getIntReg(0), curMcBlock);
+        }
+    }
+
+    // phi消除：每个phi对应一个临时寄存器，前驱块末尾写入临时寄存器，phi所在块开头再读出
+    private void genPhiCopies(){
+        for(BasicBlock basicBlock: curFunc.getBasicBlocks()){
+            McBlock mcBlock = blockMap.get(basicBlock.getLabel());
+            ArrayList<McMove> heads = new ArrayList<>();
+            for(Instr instr: basicBlock.getInstrs()){
+                if(!(instr instanceof Phi))
+                    break;
+                Phi phi = (Phi) instr;
+                boolean isFloat = phi.getType() instanceof FloatType;
+                Operand tmp = new Operand.VirtualReg(isFloat, curMcFunc);
+                for(int i = 0; i < phi.getIncomingBlocks().size(); i++){
+                    Value value = phi.getUse(i);
+                    if(value instanceof Variable.Undef)
+                        continue;
+                    McBlock pred = blockMap.get(phi.getIncomingBlocks().get(i).getLabel());
+                    curMcBlock = pred;
+                    McMove copy = new McMove(tmp, getPhiSrc(value));
+                    McInstr pos = pred.getFirstBranch();
+                    if(pos == null)
+                        pred.addInstr(copy);
+                    else
+                        copy.insertBefore(pos);
+                }
+                heads.add(new McMove(getOperand(phi), tmp));
+            }
+            for(int i = heads.size() - 1; i >= 0; i--){
+                McMove move = heads.get(i);
+                if(mcBlock.getMcInstrs().isEmpty())
+                    mcBlock.addInstr(move);
+                else
+                    move.insertBefore(mcBlock.getMcInstrs().getFirst());
+            }
+        }
+    }
+
+    // phi的来源值，常量直接作为传送的立即数，避免在跳转之后物化
+    private Operand getPhiSrc(Value value){
+        if(value instanceof Variable.ConstInt)
+            return new Operand.Imm(((Variable.ConstInt) value).getIntVal());
+        if(value instanceof Variable.ConstFloat)
+            return new Operand.Imm(((Variable.ConstFloat) value).getFloatVal());
+        assert !(value instanceof Alloc) && !(value instanceof GlobalValue);
+        return getOperand(value);
+    }
+
     public void genBinaryInstr(Binary instr){
         Value left = instr.getUse(0);
         Value right = instr.getUse(1);
         OpTree.Operator op = instr.getOp();
         Operand dstVr = getOperand(instr);
+        if(instr.getType() instanceof FloatType){
+            genFloatBinary(instr);
+            return;
+        }
         switch (op){
             case Mod -> {
-                boolean isPower2 = false;
-                int imm = 1, abs = 1;
-                if(right instanceof Variable.ConstInt){
-                    imm = ((Variable.ConstInt)right).getIntVal();
-                    abs = Math.abs(imm);
-                    if((abs & (abs - 1)) == 0){
-                        isPower2 = true;
-                    }
+                if(left instanceof Variable.ConstInt && right instanceof Variable.ConstInt){
+                    int ans = ((Variable.ConstInt) left).getIntVal() % ((Variable.ConstInt) right).getIntVal();
+                    new McMove(dstVr, getOperand(Variable.ConstInt.get(ans)),curMcBlock);
                 }
-                if(isOptMulDiv && isPower2){
-                    assert abs != 0;
-                    if(left instanceof Variable.ConstInt){
-                        int valLeft = ((Variable.ConstInt)left).getIntVal();
-                        new McMove(dstVr, getOperand(new Variable.ConstInt(valLeft % imm)),curMcBlock);
-                    } else if(abs  == 1){
-                        new McMove(dstVr, getOperand(new Variable.ConstInt(0)), curMcBlock);
-                    } else {
-                        Operand sign = new Operand.VirtualReg(false, curMcFunc);
-                        Operand lVr = getOperand(left);
-                        new MCShift(sign, lVr, getOperand(new Variable.ConstInt(31)),MCShift.ShiftType.asr,curMcBlock);
-                        Operand immOpd = getOperand(new Variable.ConstInt(abs - 1));
-                        new McBinary(McBinary.BinaryType.And, dstVr, lVr, immOpd, curMcBlock );
+                else if(isOptMulDiv && right instanceof Variable.ConstInt && ((Variable.ConstInt) right).getIntVal() != 0){
+                    // a % b = a - (a / b) * b，商使用常数除法求得
+                    int imm = ((Variable.ConstInt) right).getIntVal();
+                    int abs = Math.abs(imm);
+                    Operand lopd = getRegOperand(left);
+                    if(abs == 1){
+                        new McMove(dstVr, new Operand.Imm(0), curMcBlock);
+                    } else if((abs & (abs - 1)) == 0){
+                        // 余数的符号与被除数相同，与除数的符号无关
                         int sh = Integer.numberOfTrailingZeros(abs);
-                        new McBinary(McBinary.BinaryType.Or, dstVr, dstVr, sign,
-                                new MCShift( MCShift.ShiftType.lsl, new Operand.Imm(sh)), curMcBlock);
+                        Operand quo = new Operand.VirtualReg(false, curMcFunc);
+                        genDivByConst(quo, lopd, abs);
+                        new McBinary(McBinary.BinaryType.Sub, dstVr, lopd, quo,
+                                new MCShift(MCShift.ShiftType.lsl, new Operand.Imm(sh)), curMcBlock);
+                    } else {
+                        Operand quo = new Operand.VirtualReg(false, curMcFunc);
+                        genDivByConst(quo, lopd, imm);
+                        Operand mul = new Operand.VirtualReg(false, curMcFunc);
+                        new McBinary(McBinary.BinaryType.Mul, mul, quo, getRegOperand(Variable.ConstInt.get(imm)), curMcBlock);
+                        new McBinary(McBinary.BinaryType.Sub, dstVr, lopd, mul, curMcBlock);
                     }
                 }
                 else {
-                    Operand lopd = getOperand(left);
-                    Operand ropd = getOperand(right);
-                    Operand dst1 = new Operand.VirtualReg(left instanceof Variable.ConstFloat, curMcFunc);
+                    Operand lopd = getRegOperand(left);
+                    Operand ropd = getRegOperand(right);
+                    Operand dst1 = new Operand.VirtualReg(false, curMcFunc);
                     new McBinary(McBinary.BinaryType.Div, dst1, lopd, ropd, curMcBlock);
                     new McBinary(McBinary.BinaryType.Mul, dst1, dst1, ropd, curMcBlock);
-                    new McBinary(McBinary.BinaryType.Sub, dst1, lopd, dst1, curMcBlock);
+                    new McBinary(McBinary.BinaryType.Sub, dstVr, lopd, dst1, curMcBlock);
                 }
             }
             case Mul  -> {
                 if(left instanceof Variable.ConstInt && right instanceof Variable.ConstInt){
                     int ans = ((Variable.ConstInt) left).getIntVal() * ((Variable.ConstInt) right).getIntVal();
-                    new McMove(dstVr, getOperand(new Variable.ConstInt(ans)),curMcBlock);
+                    new McMove(dstVr, getOperand(Variable.ConstInt.get(ans)),curMcBlock);
                 } else if(left instanceof Variable.ConstInt || right instanceof Variable.ConstInt) {
                     Operand src;
                     int imm;
@@ -189,52 +553,29 @@ public class CodeGen {
                         if(sh == 0) {
                             new McMove(dstVr, src, curMcBlock);
                         } else {
-                            new MCShift(dstVr, dstVr, getOperand(new Variable.ConstInt(sh)),MCShift.ShiftType.lsl,curMcBlock);
+                            new MCShift(dstVr, src, new Operand.Imm(sh),MCShift.ShiftType.lsl,curMcBlock);
                         }
                         if(imm < 0) {
                             new McBinary(McBinary.BinaryType.Rsb, dstVr, dstVr, new Operand.Imm(0),curMcBlock);
                         }
                     }
                     else {
-                        new McBinary(McBinary.BinaryType.Mul, dstVr, src, getOperand(new Variable.ConstInt(imm)), curMcBlock);
+                        new McBinary(McBinary.BinaryType.Mul, dstVr, src, getRegOperand(Variable.ConstInt.get(imm)), curMcBlock);
                     }
                 } else {
                     // 没有常量的int类型乘法
-                    Operand lopd = getOperand(left);
-                    Operand ropd = getOperand(right);
+                    Operand lopd = getRegOperand(left);
+                    Operand ropd = getRegOperand(right);
                     new McBinary(McBinary.BinaryType.Mul, dstVr, lopd, ropd, curMcBlock);
                 }
             }
             case Div -> {
                 if(left instanceof Variable.ConstInt && right instanceof Variable.ConstInt){
                     int ans = ((Variable.ConstInt) left).getIntVal() / ((Variable.ConstInt) right).getIntVal();
-                    new McMove(dstVr, getOperand(new Variable.ConstInt(ans)),curMcBlock);
+                    new McMove(dstVr, getOperand(Variable.ConstInt.get(ans)),curMcBlock);
                 }
-                else if(right instanceof Variable.ConstInt){
-                    Operand lopd = getOperand(left);
-                    int imm = ((Variable.ConstInt) right).getIntVal();
-                    int abs = Math.abs(imm);
-                    if(imm == 1){
-                        new McMove(dstVr, lopd, curMcBlock);
-                    } else if(imm == -1) {
-                        new McBinary(McBinary.BinaryType.Rsb, dstVr, lopd,
-                                new Operand.Imm(0), curMcBlock);
-                    } else if((abs & (abs -1)) == 0){
-                        int sh = 31 - Integer.numberOfLeadingZeros(abs);
-                        Operand sign = new Operand.VirtualReg(false, curMcFunc);
-                        Operand lVr = getOperand(left);
-                        new MCShift(sign, lVr, getOperand(new Variable.ConstInt(31)),MCShift.ShiftType.asr,curMcBlock);
-                        Operand tmp = new Operand.VirtualReg(false, curMcFunc);
-                        new McBinary(McBinary.BinaryType.Add, tmp, lopd, sign,
-                                new MCShift( MCShift.ShiftType.lsr, new Operand.Imm(32 - sh)), curMcBlock);
-                        new MCShift(dstVr, tmp, getOperand(new Variable.ConstInt(sh)),MCShift.ShiftType.asr,curMcBlock);
-                        if(imm < 0){
-                            new McBinary(McBinary.BinaryType.Rsb, dstVr, dstVr, new Operand.Imm(0),curMcBlock);
-                        }
-                    } else {
-                        // TODO 魔法数的除法
-                        new McBinary(McBinary.BinaryType.Mul, dstVr, lopd, getOperand(new Variable.ConstInt(imm)), curMcBlock);
-                    }
+                else if(isOptMulDiv && right instanceof Variable.ConstInt && ((Variable.ConstInt) right).getIntVal() != 0){
+                    genDivByConst(dstVr, getRegOperand(left), ((Variable.ConstInt) right).getIntVal());
                 }
                 else {
                     Operand lopd, ropd;
@@ -245,14 +586,14 @@ public class CodeGen {
                     } else {
                         lopd = getOperand(left);
                     }
-                    ropd = getOperand(right);
+                    ropd = getRegOperand(right);
                     new McBinary(McBinary.BinaryType.Div, dstVr, lopd, ropd, curMcBlock);
                 }
             }
             case Add -> {
                 if(left instanceof Variable.ConstInt && right instanceof Variable.ConstInt){
                     int ans = ((Variable.ConstInt) left).getIntVal() + ((Variable.ConstInt) right).getIntVal();
-                    new McMove(dstVr, getOperand(new Variable.ConstInt(ans)),curMcBlock);
+                    new McMove(dstVr, getOperand(Variable.ConstInt.get(ans)),curMcBlock);
                 } else {
                     if(left instanceof Variable.ConstInt) {
                         Value temp = left;
@@ -267,7 +608,7 @@ public class CodeGen {
             case Sub -> {
                 if(left instanceof Variable.ConstInt && right instanceof Variable.ConstInt){
                     int ans = ((Variable.ConstInt) left).getIntVal() - ((Variable.ConstInt) right).getIntVal();
-                    new McMove(dstVr, getOperand(new Variable.ConstInt(ans)),curMcBlock);
+                    new McMove(dstVr, getOperand(Variable.ConstInt.get(ans)),curMcBlock);
                 } else if(left instanceof Variable.ConstInt){
                     Operand ropd = getOperand(left);
                     Operand lopd = getOperand(right);
@@ -284,18 +625,105 @@ public class CodeGen {
         }
     }
 
+    // 除以非零常数，结果向零取整
+    private void genDivByConst(Operand dst, Operand lopd, int imm){
+        int abs = Math.abs(imm);
+        if(imm == 1){
+            new McMove(dst, lopd, curMcBlock);
+            return;
+        }
+        if(imm == -1){
+            new McBinary(McBinary.BinaryType.Rsb, dst, lopd, new Operand.Imm(0), curMcBlock);
+            return;
+        }
+        Operand quo = imm < 0 ? new Operand.VirtualReg(false, curMcFunc) : dst;
+        if((abs & (abs - 1)) == 0){
+            // 负数先加上2^sh-1再算术右移，使结果向零取整
+            int sh = Integer.numberOfTrailingZeros(abs);
+            Operand sign = new Operand.VirtualReg(false, curMcFunc);
+            new MCShift(sign, lopd, new Operand.Imm(31), MCShift.ShiftType.asr, curMcBlock);
+            Operand tmp = new Operand.VirtualReg(false, curMcFunc);
+            new McBinary(McBinary.BinaryType.Add, tmp, lopd, sign,
+                    new MCShift(MCShift.ShiftType.lsr, new Operand.Imm(32 - sh)), curMcBlock);
+            new MCShift(quo, tmp, new Operand.Imm(sh), MCShift.ShiftType.asr, curMcBlock);
+        } else {
+            // 魔法数除法：q = (n * magic) >> (32 + shift)，再对负数的结果加一
+            int[] ms = magicNumber(abs);
+            int magic = ms[0], shift = ms[1];
+            Operand hi = new Operand.VirtualReg(false, curMcFunc);
+            new McBinary(McBinary.BinaryType.Smmul, hi, lopd, getRegOperand(Variable.ConstInt.get(magic)), curMcBlock);
+            if(magic < 0){
+                // 魔法数超过2^31时按有符号数乘出来少加了一次n
+                Operand sum = new Operand.VirtualReg(false, curMcFunc);
+                new McBinary(McBinary.BinaryType.Add, sum, hi, lopd, curMcBlock);
+                hi = sum;
+            }
+            if(shift > 0){
+                Operand shifted = new Operand.VirtualReg(false, curMcFunc);
+                new MCShift(shifted, hi, new Operand.Imm(shift), MCShift.ShiftType.asr, curMcBlock);
+                hi = shifted;
+            }
+            new McBinary(McBinary.BinaryType.Sub, quo, hi, lopd,
+                    new MCShift(MCShift.ShiftType.asr, new Operand.Imm(31)), curMcBlock);
+        }
+        if(imm < 0){
+            new McBinary(McBinary.BinaryType.Rsb, dst, quo, new Operand.Imm(0), curMcBlock);
+        }
+    }
+
+    // 求有符号除以d(d >= 2)的魔法数和移位量，见Hacker's Delight 10-1
+    public static int[] magicNumber(int d){
+        final long two31 = 0x80000000L;
+        long anc = two31 - 1 - two31 % d;
+        int p = 31;
+        long q1 = two31 / anc, r1 = two31 - q1 * anc;
+        long q2 = two31 / d, r2 = two31 - q2 * d;
+        long delta;
+        do {
+            p++;
+            q1 *= 2;
+            r1 *= 2;
+            if(r1 >= anc){
+                q1++;
+                r1 -= anc;
+            }
+            q2 *= 2;
+            r2 *= 2;
+            if(r2 >= d){
+                q2++;
+                r2 -= d;
+            }
+            delta = d - r2;
+        } while (q1 < delta || (q1 == delta && r1 == 0));
+        return new int[]{(int) (q2 + 1), p - 32};
+    }
+
+    private void genFloatBinary(Binary instr){
+        Operand dst = getOperand(instr);
+        Operand lopd = getRegOperand(instr.getLeft());
+        Operand ropd = getRegOperand(instr.getRight());
+        McBinary.BinaryType type = switch (instr.getOp()) {
+            case Add -> McBinary.BinaryType.Add;
+            case Sub -> McBinary.BinaryType.Sub;
+            case Mul -> McBinary.BinaryType.Mul;
+            case Div -> McBinary.BinaryType.Div;
+            default -> throw new AssertionError("Bad float Binary Operator " + instr.getOp());
+        };
+        new McBinary(type, dst, lopd, ropd, curMcBlock);
+    }
+
     // global的虚拟寄存器需要实现声明，便于后期使用到的时候进行区分
     public void globalGen(){
 //        System.err.println("暂时不确定是否需要globalGen，有待进一步考虑，暂时不写");
         for(GlobalValue globalValue: globals){
             assert globalValue.getType() instanceof PointerType;
             Operand opd = new Operand.Global(globalValue);
-            value2opd.put(globalValue, opd);
+            global2opd.put(globalValue, opd);
         }
     }
 
     public Operand getOperand(Value value){
-        Operand opd = value2opd.get(value);
+        Operand opd = value instanceof GlobalValue ? global2opd.get(value) : value2opd.get(value.getIndex());
         if(opd == null){
             if(value instanceof Variable.ConstInt){
                 int intVal = ((Variable.ConstInt)value).getIntVal();
@@ -310,18 +738,36 @@ public class CodeGen {
                 float floatVal = ((Variable.ConstFloat)value).getFloatVal();
                 opd = new Operand.Imm( floatVal);
             }
+            else if(value instanceof Alloc) {
+                // alloca的地址在每次使用时重新计算，避免长时间占用寄存器
+                opd = new Operand.VirtualReg(false, curMcFunc);
+                addImm(opd, Operand.PhyReg.sp(), allocOffset.get(value));
+            }
             else {
                 if(value.getType() instanceof FloatType) {
                     opd = new Operand.VirtualReg(true, curMcFunc);
                 } else {
                     opd = new Operand.VirtualReg(false, curMcFunc);
                 }
-                value2opd.put(value, opd);
+                // undef没有编号，每次使用取一个新的虚拟寄存器即可
+                if(value.getIndex() >= 0)
+                    value2opd.put(value.getIndex(), opd);
             }
         }
         return opd;
     }
 
+    // 保证返回的操作数是寄存器，立即数和全局变量地址先传送到寄存器中
+    public Operand getRegOperand(Value value){
+        Operand opd = getOperand(value);
+        if(opd instanceof Operand.Imm || opd instanceof Operand.Global){
+            Operand dst = new Operand.VirtualReg(opd.isFloat(), curMcFunc);
+            new McMove(dst, opd, curMcBlock);
+            opd = dst;
+        }
+        return opd;
+    }
+
     // arm有一套神奇的Int的Imm是否能进行使用的机制
     public static boolean canImmSaved(int imm) {
         int n = imm;
@@ -329,7 +775,7 @@ public class CodeGen {
             if ((n & ~0x00ff) == 0) {
                 return true;
             }
-            n = (n << 30) | (n >> 2);
+            n = (n << 2) | (n >>> 30);
         }
         return false;
     }
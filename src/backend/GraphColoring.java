@@ -0,0 +1,411 @@
+package backend;
+
+import lir.McBlock;
+import lir.McFunction;
+import lir.Operand;
+import lir.mcInstr.McInstr;
+import lir.mcInstr.McMove;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Stack;
+
+/**
+ * 迭代合并的图着色寄存器分配(George & Appel)，整数和浮点寄存器分别着色
+ * 着色失败时返回需要溢出的虚拟寄存器，由RegAllocate改写后重新分配
+ */
+public class GraphColoring {
+    private final McFunction mcFunction;
+    private final boolean isFloat;
+    private final HashSet<Operand> unspillable;
+    private final Operand.PhyReg[] colors;
+    private final int K;
+
+    // 节点编号，用于邻接矩阵的哈希
+    private final HashMap<Operand, Integer> nodeId = new HashMap<>();
+    private final HashSet<Long> adjSet = new HashSet<>();
+    private final HashMap<Operand, HashSet<Operand>> adjList = new HashMap<>();
+    private final HashMap<Operand, Integer> degree = new HashMap<>();
+    private final HashMap<Operand, HashSet<McMove>> moveList = new HashMap<>();
+    private final HashMap<Operand, Operand> alias = new HashMap<>();
+    private final HashMap<Operand, Operand.PhyReg> color = new HashMap<>();
+    private final HashMap<Operand, Double> spillCost = new HashMap<>();
+
+    private final LinkedHashSet<Operand> initial = new LinkedHashSet<>();
+    private final LinkedHashSet<Operand> simplifyWorklist = new LinkedHashSet<>();
+    private final LinkedHashSet<Operand> freezeWorklist = new LinkedHashSet<>();
+    private final LinkedHashSet<Operand> spillWorklist = new LinkedHashSet<>();
+    private final HashSet<Operand> spilledNodes = new HashSet<>();
+    private final HashSet<Operand> coalescedNodes = new HashSet<>();
+    private final HashSet<Operand> coloredNodes = new HashSet<>();
+    private final Stack<Operand> selectStack = new Stack<>();
+    private final HashSet<Operand> onStack = new HashSet<>();
+
+    private final LinkedHashSet<McMove> worklistMoves = new LinkedHashSet<>();
+    private final HashSet<McMove> activeMoves = new HashSet<>();
+    private final HashSet<McMove> coalescedMoves = new HashSet<>();
+    private final HashSet<McMove> constrainedMoves = new HashSet<>();
+    private final HashSet<McMove> frozenMoves = new HashSet<>();
+
+    public GraphColoring(McFunction mcFunction, boolean isFloat, HashSet<Operand> unspillable) {
+        this.mcFunction = mcFunction;
+        this.isFloat = isFloat;
+        this.unspillable = unspillable;
+        this.colors = RegAllocate.allocatableRegs(isFloat);
+        this.K = colors.length;
+    }
+
+    // 返回虚拟寄存器到物理寄存器的映射，需要溢出时返回null，溢出的节点由getSpilledNodes取得
+    public HashMap<Operand, Operand.PhyReg> run() {
+        build(Liveness.analyze(mcFunction));
+        makeWorklist();
+        while (!simplifyWorklist.isEmpty() || !worklistMoves.isEmpty()
+                || !freezeWorklist.isEmpty() || !spillWorklist.isEmpty()) {
+            if (!simplifyWorklist.isEmpty())
+                simplify();
+            else if (!worklistMoves.isEmpty())
+                coalesce();
+            else if (!freezeWorklist.isEmpty())
+                freeze();
+            else
+                selectSpill();
+        }
+        assignColors();
+        if (!spilledNodes.isEmpty())
+            return null;
+        HashMap<Operand, Operand.PhyReg> result = new HashMap<>();
+        for (Operand n : nodeId.keySet()) {
+            if (n.isVirtual())
+                result.put(n, color.get(n));
+        }
+        return result;
+    }
+
+    public HashSet<Operand> getSpilledNodes() {
+        return spilledNodes;
+    }
+
+    private boolean inClass(Operand opd) {
+        return opd.needsColor() && opd.isFloat() == isFloat;
+    }
+
+    private boolean isPrecolored(Operand opd) {
+        return opd.isPhysical();
+    }
+
+    private void addNode(Operand opd) {
+        if (nodeId.containsKey(opd))
+            return;
+        nodeId.put(opd, nodeId.size());
+        if (isPrecolored(opd)) {
+            color.put(opd, (Operand.PhyReg) opd);
+        } else {
+            initial.add(opd);
+            adjList.put(opd, new HashSet<>());
+            degree.put(opd, 0);
+            spillCost.put(opd, 0.0);
+        }
+        moveList.put(opd, new HashSet<>());
+    }
+
+    private long edgeKey(Operand u, Operand v) {
+        return ((long) nodeId.get(u) << 32) | nodeId.get(v);
+    }
+
+    private void addEdge(Operand u, Operand v) {
+        if (u == v || adjSet.contains(edgeKey(u, v)))
+            return;
+        adjSet.add(edgeKey(u, v));
+        adjSet.add(edgeKey(v, u));
+        if (!isPrecolored(u)) {
+            adjList.get(u).add(v);
+            degree.put(u, degree.get(u) + 1);
+        }
+        if (!isPrecolored(v)) {
+            adjList.get(v).add(u);
+            degree.put(v, degree.get(v) + 1);
+        }
+    }
+
+    private void build(Liveness liveness) {
+        for (McBlock mcBlock : mcFunction.getMcBlocks()) {
+            // 循环内的使用按循环深度加权，尽量不溢出循环中频繁使用的寄存器
+            double weight = Math.pow(10, Math.min(mcBlock.getBasicBlock().getLoopDepth(), 6));
+            HashSet<Operand> live = new HashSet<>();
+            for (Operand opd : liveness.getLiveOut(mcBlock)) {
+                if (inClass(opd)) {
+                    addNode(opd);
+                    live.add(opd);
+                }
+            }
+            ArrayList<McInstr> instrs = new ArrayList<>();
+            for (McInstr mcInstr : mcBlock.getMcInstrs()) {
+                instrs.add(mcInstr);
+            }
+            for (int i = instrs.size() - 1; i >= 0; i--) {
+                McInstr mcInstr = instrs.get(i);
+                for (Operand opd : mcInstr.defOperands) {
+                    if (inClass(opd)) {
+                        addNode(opd);
+                        if (!isPrecolored(opd))
+                            spillCost.put(opd, spillCost.get(opd) + weight);
+                    }
+                }
+                for (Operand opd : mcInstr.useOperands) {
+                    if (inClass(opd)) {
+                        addNode(opd);
+                        if (!isPrecolored(opd))
+                            spillCost.put(opd, spillCost.get(opd) + weight);
+                    }
+                }
+                if (mcInstr instanceof McMove && ((McMove) mcInstr).isCopy() && inClass(((McMove) mcInstr).getDst())) {
+                    McMove move = (McMove) mcInstr;
+                    live.remove(move.getSrc());
+                    moveList.get(move.getDst()).add(move);
+                    moveList.get(move.getSrc()).add(move);
+                    worklistMoves.add(move);
+                }
+                for (Operand def : mcInstr.defOperands) {
+                    if (!inClass(def))
+                        continue;
+                    live.add(def);
+                    for (Operand l : live) {
+                        addEdge(l, def);
+                    }
+                }
+                for (Operand def : mcInstr.defOperands) {
+                    live.remove(def);
+                }
+                for (Operand use : mcInstr.useOperands) {
+                    if (inClass(use))
+                        live.add(use);
+                }
+            }
+        }
+    }
+
+    private void makeWorklist() {
+        for (Operand n : initial) {
+            if (degree.get(n) >= K)
+                spillWorklist.add(n);
+            else if (moveRelated(n))
+                freezeWorklist.add(n);
+            else
+                simplifyWorklist.add(n);
+        }
+        initial.clear();
+    }
+
+    private ArrayList<Operand> adjacent(Operand n) {
+        ArrayList<Operand> result = new ArrayList<>();
+        for (Operand m : adjList.get(n)) {
+            if (!onStack.contains(m) && !coalescedNodes.contains(m))
+                result.add(m);
+        }
+        return result;
+    }
+
+    private ArrayList<McMove> nodeMoves(Operand n) {
+        ArrayList<McMove> result = new ArrayList<>();
+        for (McMove move : moveList.get(n)) {
+            if (activeMoves.contains(move) || worklistMoves.contains(move))
+                result.add(move);
+        }
+        return result;
+    }
+
+    private boolean moveRelated(Operand n) {
+        return !nodeMoves(n).isEmpty();
+    }
+
+    private void simplify() {
+        Operand n = simplifyWorklist.iterator().next();
+        simplifyWorklist.remove(n);
+        selectStack.push(n);
+        onStack.add(n);
+        for (Operand m : adjacent(n)) {
+            decrementDegree(m);
+        }
+    }
+
+    private void decrementDegree(Operand m) {
+        if (isPrecolored(m))
+            return;
+        int d = degree.get(m);
+        degree.put(m, d - 1);
+        if (d == K) {
+            ArrayList<Operand> nodes = adjacent(m);
+            nodes.add(m);
+            enableMoves(nodes);
+            spillWorklist.remove(m);
+            if (moveRelated(m))
+                freezeWorklist.add(m);
+            else
+                simplifyWorklist.add(m);
+        }
+    }
+
+    private void enableMoves(ArrayList<Operand> nodes) {
+        for (Operand n : nodes) {
+            for (McMove move : nodeMoves(n)) {
+                if (activeMoves.remove(move))
+                    worklistMoves.add(move);
+            }
+        }
+    }
+
+    private void addWorkList(Operand u) {
+        if (!isPrecolored(u) && !moveRelated(u) && degree.get(u) < K) {
+            freezeWorklist.remove(u);
+            simplifyWorklist.add(u);
+        }
+    }
+
+    private boolean ok(Operand t, Operand r) {
+        return isPrecolored(t) || degree.get(t) < K || adjSet.contains(edgeKey(t, r));
+    }
+
+    private boolean conservative(ArrayList<Operand> nodes) {
+        int k = 0;
+        HashSet<Operand> seen = new HashSet<>();
+        for (Operand n : nodes) {
+            if (seen.add(n) && (isPrecolored(n) || degree.get(n) >= K))
+                k++;
+        }
+        return k < K;
+    }
+
+    private Operand getAlias(Operand n) {
+        while (coalescedNodes.contains(n)) {
+            n = alias.get(n);
+        }
+        return n;
+    }
+
+    private void coalesce() {
+        McMove move = worklistMoves.iterator().next();
+        worklistMoves.remove(move);
+        Operand x = getAlias(move.getDst());
+        Operand y = getAlias(move.getSrc());
+        Operand u, v;
+        if (isPrecolored(y)) {
+            u = y;
+            v = x;
+        } else {
+            u = x;
+            v = y;
+        }
+        if (u == v) {
+            coalescedMoves.add(move);
+            addWorkList(u);
+        } else if (isPrecolored(v) || adjSet.contains(edgeKey(u, v))) {
+            constrainedMoves.add(move);
+            addWorkList(u);
+            addWorkList(v);
+        } else if (canCoalesce(u, v)) {
+            coalescedMoves.add(move);
+            combine(u, v);
+            addWorkList(u);
+        } else {
+            activeMoves.add(move);
+        }
+    }
+
+    private boolean canCoalesce(Operand u, Operand v) {
+        if (isPrecolored(u)) {
+            for (Operand t : adjacent(v)) {
+                if (!ok(t, u))
+                    return false;
+            }
+            return true;
+        }
+        ArrayList<Operand> nodes = adjacent(u);
+        nodes.addAll(adjacent(v));
+        return conservative(nodes);
+    }
+
+    private void combine(Operand u, Operand v) {
+        if (freezeWorklist.contains(v))
+            freezeWorklist.remove(v);
+        else
+            spillWorklist.remove(v);
+        coalescedNodes.add(v);
+        alias.put(v, u);
+        moveList.get(u).addAll(moveList.get(v));
+        if (!isPrecolored(u))
+            spillCost.put(u, spillCost.get(u) + spillCost.get(v));
+        ArrayList<Operand> nodes = new ArrayList<>();
+        nodes.add(v);
+        enableMoves(nodes);
+        for (Operand t : adjacent(v)) {
+            addEdge(t, u);
+            decrementDegree(t);
+        }
+        if (!isPrecolored(u) && degree.get(u) >= K && freezeWorklist.remove(u))
+            spillWorklist.add(u);
+    }
+
+    private void freeze() {
+        Operand u = freezeWorklist.iterator().next();
+        freezeWorklist.remove(u);
+        simplifyWorklist.add(u);
+        freezeMoves(u);
+    }
+
+    private void freezeMoves(Operand u) {
+        for (McMove move : nodeMoves(u)) {
+            Operand x = move.getDst();
+            Operand y = move.getSrc();
+            Operand v = getAlias(y) == getAlias(u) ? getAlias(x) : getAlias(y);
+            activeMoves.remove(move);
+            frozenMoves.add(move);
+            if (!isPrecolored(v) && nodeMoves(v).isEmpty() && degree.get(v) < K) {
+                freezeWorklist.remove(v);
+                simplifyWorklist.add(v);
+            }
+        }
+    }
+
+    // 溢出代价为按循环深度加权的使用和定值次数除以度数，溢出临时寄存器不能再次溢出
+    private void selectSpill() {
+        Operand m = null;
+        double best = Double.MAX_VALUE;
+        for (Operand n : spillWorklist) {
+            double cost = unspillable.contains(n) ? Double.MAX_VALUE / 2 : spillCost.get(n) / degree.get(n);
+            if (m == null || cost < best) {
+                m = n;
+                best = cost;
+            }
+        }
+        spillWorklist.remove(m);
+        simplifyWorklist.add(m);
+        freezeMoves(m);
+    }
+
+    private void assignColors() {
+        while (!selectStack.isEmpty()) {
+            Operand n = selectStack.pop();
+            onStack.remove(n);
+            LinkedHashSet<Operand.PhyReg> okColors = new LinkedHashSet<>();
+            for (Operand.PhyReg reg : colors) {
+                okColors.add(reg);
+            }
+            for (Operand w : adjList.get(n)) {
+                Operand a = getAlias(w);
+                if (isPrecolored(a) || coloredNodes.contains(a))
+                    okColors.remove(color.get(a));
+            }
+            if (okColors.isEmpty()) {
+                spilledNodes.add(n);
+            } else {
+                coloredNodes.add(n);
+                color.put(n, okColors.iterator().next());
+            }
+        }
+        for (Operand n : coalescedNodes) {
+            color.put(n, color.get(getAlias(n)));
+        }
+    }
+}
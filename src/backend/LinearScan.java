@@ -0,0 +1,182 @@
+package backend;
+
+import lir.McBlock;
+import lir.McFunction;
+import lir.Operand;
+import lir.mcInstr.McInstr;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * 线性扫描寄存器分配(Poletto & Sarkar)，编译速度快，用于不开优化或者函数规模过大的情况
+ * 每条指令占两个位置，2i为读操作数的位置，2i+1为写操作数的位置
+ * 虚拟寄存器的活跃区间取其所有活跃位置的最小和最大值，物理寄存器的占用位置单独记录
+ */
+public class LinearScan {
+    private final McFunction mcFunction;
+    private final boolean isFloat;
+    private final HashSet<Operand> unspillable;
+    private final Operand.PhyReg[] colors;
+
+    private final HashMap<Operand, Interval> intervals = new HashMap<>();
+    // 物理寄存器被固定使用的位置，例如传参、返回值以及函数调用对调用者保存寄存器的破坏
+    private final HashMap<Operand.PhyReg, BitSet> fixed = new HashMap<>();
+    private final HashSet<Operand> spilledNodes = new HashSet<>();
+
+    private static class Interval {
+        final Operand vr;
+        int start = Integer.MAX_VALUE;
+        int end = -1;
+        Operand.PhyReg reg;
+
+        Interval(Operand vr) {
+            this.vr = vr;
+        }
+
+        void extend(int pos) {
+            start = Math.min(start, pos);
+            end = Math.max(end, pos);
+        }
+    }
+
+    public LinearScan(McFunction mcFunction, boolean isFloat, HashSet<Operand> unspillable) {
+        this.mcFunction = mcFunction;
+        this.isFloat = isFloat;
+        this.unspillable = unspillable;
+        this.colors = RegAllocate.allocatableRegs(isFloat);
+        for (Operand.PhyReg reg : colors) {
+            fixed.put(reg, new BitSet());
+        }
+    }
+
+    // 返回虚拟寄存器到物理寄存器的映射，需要溢出时返回null，溢出的节点由getSpilledNodes取得
+    public HashMap<Operand, Operand.PhyReg> run() {
+        buildIntervals(Liveness.analyze(mcFunction));
+        ArrayList<Interval> sorted = new ArrayList<>(intervals.values());
+        sorted.sort((a, b) -> a.start != b.start ? Integer.compare(a.start, b.start)
+                : Integer.compare(((Operand.VirtualReg) a.vr).getValue(), ((Operand.VirtualReg) b.vr).getValue()));
+        // active按结束位置升序排列
+        ArrayList<Interval> active = new ArrayList<>();
+        HashSet<Operand.PhyReg> free = new HashSet<>();
+        for (Operand.PhyReg reg : colors) {
+            free.add(reg);
+        }
+        for (Interval cur : sorted) {
+            for (int i = 0; i < active.size(); ) {
+                Interval it = active.get(i);
+                if (it.end >= cur.start) {
+                    i++;
+                    continue;
+                }
+                free.add(it.reg);
+                active.remove(i);
+            }
+            Operand.PhyReg reg = null;
+            for (Operand.PhyReg candidate : colors) {
+                if (free.contains(candidate) && !conflictsFixed(candidate, cur)) {
+                    reg = candidate;
+                    break;
+                }
+            }
+            if (reg != null) {
+                cur.reg = reg;
+                free.remove(reg);
+                insertActive(active, cur);
+                continue;
+            }
+            // 没有空闲寄存器，溢出结束位置最远的区间
+            Interval victim = null;
+            for (int i = active.size() - 1; i >= 0; i--) {
+                Interval it = active.get(i);
+                if (!unspillable.contains(it.vr) && !conflictsFixed(it.reg, cur)) {
+                    victim = it;
+                    break;
+                }
+            }
+            if (victim != null && (victim.end > cur.end || unspillable.contains(cur.vr))) {
+                cur.reg = victim.reg;
+                victim.reg = null;
+                active.remove(victim);
+                spilledNodes.add(victim.vr);
+                insertActive(active, cur);
+            } else {
+                spilledNodes.add(cur.vr);
+            }
+        }
+        if (!spilledNodes.isEmpty())
+            return null;
+        HashMap<Operand, Operand.PhyReg> result = new HashMap<>();
+        for (Interval it : intervals.values()) {
+            result.put(it.vr, it.reg);
+        }
+        return result;
+    }
+
+    public HashSet<Operand> getSpilledNodes() {
+        return spilledNodes;
+    }
+
+    private void insertActive(ArrayList<Interval> active, Interval cur) {
+        int i = 0;
+        while (i < active.size() && active.get(i).end <= cur.end) {
+            i++;
+        }
+        active.add(i, cur);
+    }
+
+    private boolean conflictsFixed(Operand.PhyReg reg, Interval it) {
+        int next = fixed.get(reg).nextSetBit(it.start);
+        return next >= 0 && next <= it.end;
+    }
+
+    private boolean inClass(Operand opd) {
+        return opd.needsColor() && opd.isFloat() == isFloat;
+    }
+
+    private void occupy(Operand opd, int pos) {
+        if (opd.isVirtual()) {
+            intervals.computeIfAbsent(opd, Interval::new).extend(pos);
+        } else {
+            fixed.get((Operand.PhyReg) opd).set(pos);
+        }
+    }
+
+    private void buildIntervals(Liveness liveness) {
+        int base = 0;
+        for (McBlock mcBlock : mcFunction.getMcBlocks()) {
+            ArrayList<McInstr> instrs = new ArrayList<>();
+            for (McInstr mcInstr : mcBlock.getMcInstrs()) {
+                instrs.add(mcInstr);
+            }
+            HashSet<Operand> live = new HashSet<>();
+            for (Operand opd : liveness.getLiveOut(mcBlock)) {
+                if (inClass(opd))
+                    live.add(opd);
+            }
+            for (int i = instrs.size() - 1; i >= 0; i--) {
+                McInstr mcInstr = instrs.get(i);
+                int pos = base + 2 * i;
+                for (Operand opd : live) {
+                    occupy(opd, pos + 1);
+                }
+                for (Operand opd : mcInstr.defOperands) {
+                    if (inClass(opd)) {
+                        occupy(opd, pos + 1);
+                        live.remove(opd);
+                    }
+                }
+                for (Operand opd : mcInstr.useOperands) {
+                    if (inClass(opd))
+                        live.add(opd);
+                }
+                for (Operand opd : live) {
+                    occupy(opd, pos);
+                }
+            }
+            base += 2 * instrs.size();
+        }
+    }
+}
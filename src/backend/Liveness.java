@@ -0,0 +1,216 @@
+package backend;
+
+import lir.McBlock;
+import lir.McFunction;
+import lir.Operand;
+import lir.mcInstr.McInstr;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+/**
+ * McFunction上的活跃变量分析，只考虑需要分配的寄存器(虚拟寄存器和可分配的物理寄存器)
+ * 寄存器按稠密编号存放在long[]位集中：r0-r15为0-15，s0-s31为16-47，虚拟寄存器vN为48+N
+ * 先求出每个块的use/def，再以工作表做反向迭代：块按逆后序编号，每次取编号最大(最靠近出口)的块，
+ * 块的live-in变化时只把它的前驱重新加入工作表，每个块的计算是对位集的按字运算
+ */
+public class Liveness {
+    private static final int PHY_REGS = 48;
+
+    private final McFunction mcFunction;
+    private final Operand[] virtualRegs; // 编号 -> 虚拟寄存器，求use/def时顺便记录
+    private final int words;
+    private final IdentityHashMap<McBlock, Integer> blockIndex = new IdentityHashMap<>();
+    private long[][] liveIn;
+    private long[][] liveOut;
+
+    private Liveness(McFunction mcFunction) {
+        this.mcFunction = mcFunction;
+        this.virtualRegs = new Operand[mcFunction.getVrCount()];
+        this.words = (PHY_REGS + virtualRegs.length + 63) >>> 6;
+    }
+
+    // 位集中的编号，不参与分配的寄存器和立即数等返回-1
+    public static int idOf(Operand opd) {
+        if (opd instanceof Operand.VirtualReg)
+            return PHY_REGS + ((Operand.VirtualReg) opd).getValue();
+        if (opd instanceof Operand.PhyReg && ((Operand.PhyReg) opd).isAllocatable())
+            return (opd.isFloat() ? 16 : 0) + ((Operand.PhyReg) opd).getIndex();
+        return -1;
+    }
+
+    private int record(Operand opd) {
+        int id = idOf(opd);
+        if (id >= PHY_REGS)
+            virtualRegs[id - PHY_REGS] = opd;
+        return id;
+    }
+
+    public Operand operandOf(int id) {
+        if (id >= PHY_REGS)
+            return virtualRegs[id - PHY_REGS];
+        return id >= 16 ? Operand.PhyReg.getFloatReg(id - 16) : Operand.PhyReg.getIntReg(id);
+    }
+
+    public static Liveness analyze(McFunction mcFunction) {
+        Liveness liveness = new Liveness(mcFunction);
+        liveness.solve();
+        return liveness;
+    }
+
+    private void solve() {
+        ArrayList<McBlock> blocks = mcFunction.getMcBlocks();
+        int n = blocks.size();
+        for (McBlock mcBlock : blocks) {
+            mcBlock.computeSucc();
+        }
+        ArrayList<McBlock> order = reversePostOrder(blocks);
+        for (int i = 0; i < n; i++) {
+            blockIndex.put(order.get(i), i);
+        }
+        int[][] succs = new int[n][];
+        ArrayList<ArrayList<Integer>> preds = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            preds.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            ArrayList<McBlock> succBlocks = order.get(i).getSuccMcBlocks();
+            succs[i] = new int[succBlocks.size()];
+            for (int j = 0; j < succBlocks.size(); j++) {
+                succs[i][j] = blockIndex.get(succBlocks.get(j));
+                preds.get(succs[i][j]).add(i);
+            }
+        }
+
+        // 每个块的use(定值之前被使用)和def
+        long[][] use = new long[n][words];
+        long[][] def = new long[n][words];
+        for (int i = 0; i < n; i++) {
+            for (McInstr mcInstr : order.get(i).getMcInstrs()) {
+                for (Operand opd : mcInstr.useOperands) {
+                    int id = record(opd);
+                    if (id >= 0 && !get(def[i], id))
+                        set(use[i], id);
+                }
+                for (Operand opd : mcInstr.defOperands) {
+                    int id = record(opd);
+                    if (id >= 0)
+                        set(def[i], id);
+                }
+            }
+        }
+
+        liveIn = new long[n][];
+        liveOut = new long[n][words];
+        for (int i = 0; i < n; i++) {
+            liveIn[i] = use[i].clone();
+        }
+        BitSet worklist = new BitSet(n);
+        worklist.set(0, n);
+        while (!worklist.isEmpty()) {
+            for (int i = worklist.previousSetBit(n - 1); i >= 0; i = worklist.previousSetBit(i - 1)) {
+                worklist.clear(i);
+                long[] out = liveOut[i];
+                for (int succ : succs[i]) {
+                    long[] succIn = liveIn[succ];
+                    for (int w = 0; w < words; w++) {
+                        out[w] |= succIn[w];
+                    }
+                }
+                // in = use | (out & ~def)
+                long[] in = liveIn[i];
+                boolean changed = false;
+                for (int w = 0; w < words; w++) {
+                    long newIn = use[i][w] | (out[w] & ~def[i][w]);
+                    if (newIn != in[w]) {
+                        in[w] = newIn;
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    for (int pred : preds.get(i)) {
+                        worklist.set(pred);
+                    }
+                }
+            }
+        }
+    }
+
+    // 从入口出发的逆后序，入口不可达的块按原顺序排在最后
+    private static ArrayList<McBlock> reversePostOrder(ArrayList<McBlock> blocks) {
+        ArrayList<McBlock> postOrder = new ArrayList<>();
+        IdentityHashMap<McBlock, Boolean> visited = new IdentityHashMap<>();
+        ArrayList<McBlock> stack = new ArrayList<>();
+        ArrayList<Integer> nextSucc = new ArrayList<>();
+        if (!blocks.isEmpty()) {
+            visited.put(blocks.get(0), true);
+            stack.add(blocks.get(0));
+            nextSucc.add(0);
+        }
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            McBlock mcBlock = stack.get(top);
+            int idx = nextSucc.get(top);
+            if (idx < mcBlock.getSuccMcBlocks().size()) {
+                nextSucc.set(top, idx + 1);
+                McBlock succ = mcBlock.getSuccMcBlocks().get(idx);
+                if (visited.put(succ, true) == null) {
+                    stack.add(succ);
+                    nextSucc.add(0);
+                }
+            } else {
+                postOrder.add(mcBlock);
+                stack.remove(top);
+                nextSucc.remove(top);
+            }
+        }
+        ArrayList<McBlock> order = new ArrayList<>();
+        for (int i = postOrder.size() - 1; i >= 0; i--) {
+            order.add(postOrder.get(i));
+        }
+        for (McBlock mcBlock : blocks) {
+            if (!visited.containsKey(mcBlock))
+                order.add(mcBlock);
+        }
+        return order;
+    }
+
+    private static boolean get(long[] bits, int id) {
+        return (bits[id >>> 6] & (1L << id)) != 0;
+    }
+
+    private static void set(long[] bits, int id) {
+        bits[id >>> 6] |= 1L << id;
+    }
+
+    public long[] getLiveInBits(McBlock mcBlock) {
+        return liveIn[blockIndex.get(mcBlock)];
+    }
+
+    public long[] getLiveOutBits(McBlock mcBlock) {
+        return liveOut[blockIndex.get(mcBlock)];
+    }
+
+    public ArrayList<Operand> getLiveIn(McBlock mcBlock) {
+        return toOperands(getLiveInBits(mcBlock));
+    }
+
+    public ArrayList<Operand> getLiveOut(McBlock mcBlock) {
+        return toOperands(getLiveOutBits(mcBlock));
+    }
+
+    // 按编号从小到大列出位集中的寄存器，遍历顺序确定
+    private ArrayList<Operand> toOperands(long[] bits) {
+        ArrayList<Operand> ret = new ArrayList<>();
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                int id = (w << 6) + Long.numberOfTrailingZeros(word);
+                ret.add(operandOf(id));
+                word &= word - 1;
+            }
+        }
+        return ret;
+    }
+}
@@ -1,13 +1,177 @@
 package backend;
 
+import lir.McBlock;
+import lir.McFunction;
+import lir.Operand;
+import lir.mcInstr.McInstr;
+import lir.mcInstr.McLoad;
+import lir.mcInstr.McMove;
+import lir.mcInstr.McStore;
+import manager.CompilationContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * 寄存器分配入口：开启优化时使用图着色，否则或者函数过大时使用线性扫描
+ * 两种分配器共用溢出改写，分配完成后替换虚拟寄存器并确定栈帧
+ */
 public class RegAllocate {
-    public static final RegAllocate Instance = new RegAllocate();
+    // 虚拟寄存器超过该数量时图着色的构图开销过大，改用线性扫描
+    private static final int LINEAR_SCAN_THRESHOLD = 5000;
 
-    private RegAllocate(){
+    // 分配顺序中调用者保存的寄存器在前，尽量少保存callee-saved寄存器
+    private static final Operand.PhyReg[] intRegs;
+    private static final Operand.PhyReg[] floatRegs;
+
+    static {
+        ArrayList<Operand.PhyReg> regs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            regs.add(Operand.PhyReg.getIntReg(i));
+        }
+        regs.add(Operand.PhyReg.lr());
+        for (int i = 4; i < 12; i++) {
+            regs.add(Operand.PhyReg.getIntReg(i));
+        }
+        intRegs = regs.toArray(new Operand.PhyReg[0]);
+        floatRegs = new Operand.PhyReg[32];
+        for (int i = 0; i < 32; i++) {
+            floatRegs[i] = Operand.PhyReg.getFloatReg(i);
+        }
+    }
+
+    private final ArrayList<McFunction> mcFunctions;
+    private final boolean opt;
+
+    public RegAllocate(ArrayList<McFunction> mcFunctions, boolean opt){
+        this.mcFunctions = mcFunctions;
+        this.opt = opt;
+    }
 
+    public static Operand.PhyReg[] allocatableRegs(boolean isFloat) {
+        return isFloat ? floatRegs : intRegs;
     }
 
+    // 各函数的寄存器分配互不依赖，并行进行
     public void alloc(){
+        CompilationContext.current().parallelForEach(mcFunctions, this::allocFunction);
+    }
+
+    private void allocFunction(McFunction mcFunction) {
+        if (mcFunction.getCachedText() != null)
+            return;
+        boolean useGraphColoring = opt
+                && mcFunction.vrList.size() + mcFunction.svrList.size() <= LINEAR_SCAN_THRESHOLD;
+        HashSet<Operand> unspillable = new HashSet<>();
+        HashMap<Operand, Operand.PhyReg> coloring = new HashMap<>();
+        for (boolean isFloat : new boolean[]{false, true}) {
+            while (true) {
+                HashMap<Operand, Operand.PhyReg> result;
+                HashSet<Operand> spilled;
+                if (useGraphColoring) {
+                    GraphColoring graphColoring = new GraphColoring(mcFunction, isFloat, unspillable);
+                    result = graphColoring.run();
+                    spilled = graphColoring.getSpilledNodes();
+                } else {
+                    LinearScan linearScan = new LinearScan(mcFunction, isFloat, unspillable);
+                    result = linearScan.run();
+                    spilled = linearScan.getSpilledNodes();
+                }
+                if (result != null) {
+                    coloring.putAll(result);
+                    break;
+                }
+                rewriteSpill(mcFunction, spilled, unspillable);
+            }
+        }
+        applyColoring(mcFunction, coloring);
+        mcFunction.finalizeFrame();
+    }
+
+    // 每个溢出的虚拟寄存器分配一个栈槽，每次使用前读出，每次定值后写回，临时寄存器的活跃区间很短不再溢出
+    private void rewriteSpill(McFunction mcFunction, HashSet<Operand> spilled, HashSet<Operand> unspillable) {
+        HashMap<Operand, Integer> slots = new HashMap<>();
+        for (Operand opd : spilled) {
+            slots.put(opd, mcFunction.allocSpillSlot());
+        }
+        for (McBlock mcBlock : mcFunction.getMcBlocks()) {
+            ArrayList<McInstr> instrs = new ArrayList<>();
+            for (McInstr mcInstr : mcBlock.getMcInstrs()) {
+                instrs.add(mcInstr);
+            }
+            for (McInstr mcInstr : instrs) {
+                HashMap<Operand, Operand> temps = new HashMap<>();
+                for (Operand opd : new ArrayList<>(mcInstr.useOperands)) {
+                    Integer slot = slots.get(opd);
+                    if (slot == null || temps.containsKey(opd))
+                        continue;
+                    Operand tmp = newTemp(mcFunction, opd, unspillable);
+                    temps.put(opd, tmp);
+                    new McLoad(tmp, Operand.PhyReg.sp(), slot).insertBefore(mcInstr);
+                    mcInstr.replaceUse(opd, tmp);
+                }
+                for (Operand opd : new ArrayList<>(mcInstr.defOperands)) {
+                    Integer slot = slots.get(opd);
+                    if (slot == null)
+                        continue;
+                    Operand tmp = temps.get(opd);
+                    if (tmp == null)
+                        tmp = newTemp(mcFunction, opd, unspillable);
+                    new McStore(tmp, Operand.PhyReg.sp(), slot).insertAfter(mcInstr);
+                    mcInstr.replaceDef(opd, tmp);
+                }
+            }
+        }
+    }
+
+    private Operand newTemp(McFunction mcFunction, Operand opd, HashSet<Operand> unspillable) {
+        Operand tmp = new Operand.VirtualReg(opd.isFloat(), mcFunction);
+        unspillable.add(tmp);
+        return tmp;
+    }
 
+    private void applyColoring(McFunction mcFunction, HashMap<Operand, Operand.PhyReg> coloring) {
+        HashSet<Operand.PhyReg> usedRegs = new HashSet<>();
+        for (McBlock mcBlock : mcFunction.getMcBlocks()) {
+            ArrayList<McInstr> dead = new ArrayList<>();
+            for (McInstr mcInstr : mcBlock.getMcInstrs()) {
+                for (int i = 0; i < mcInstr.defOperands.size(); i++) {
+                    Operand.PhyReg reg = coloring.get(mcInstr.defOperands.get(i));
+                    if (reg != null)
+                        mcInstr.defOperands.set(i, reg);
+                    if (mcInstr.defOperands.get(i) instanceof Operand.PhyReg)
+                        usedRegs.add((Operand.PhyReg) mcInstr.defOperands.get(i));
+                }
+                for (int i = 0; i < mcInstr.useOperands.size(); i++) {
+                    Operand.PhyReg reg = coloring.get(mcInstr.useOperands.get(i));
+                    if (reg != null)
+                        mcInstr.useOperands.set(i, reg);
+                }
+                if (mcInstr instanceof McMove && ((McMove) mcInstr).getCond() == null
+                        && ((McMove) mcInstr).getDst() == ((McMove) mcInstr).getSrc()) {
+                    dead.add(mcInstr);
+                }
+            }
+            for (McInstr mcInstr : dead) {
+                mcInstr.remove();
+            }
+        }
+        // 函数调用的def只表示破坏，不会真正写入callee-saved寄存器
+        ArrayList<Operand.PhyReg> calleeSaved = mcFunction.getUsedCalleeSavedRegs();
+        calleeSaved.clear();
+        for (int i = 4; i < 12; i++) {
+            if (usedRegs.contains(Operand.PhyReg.getIntReg(i)))
+                calleeSaved.add(Operand.PhyReg.getIntReg(i));
+        }
+        // vpush需要连续的寄存器，保存s16到用到的最大编号
+        int maxFloat = -1;
+        for (int i = 16; i < 32; i++) {
+            if (usedRegs.contains(Operand.PhyReg.getFloatReg(i)))
+                maxFloat = i;
+        }
+        for (int i = 16; i <= maxFloat; i++) {
+            calleeSaved.add(Operand.PhyReg.getFloatReg(i));
+        }
     }
 }
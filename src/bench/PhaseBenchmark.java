@@ -0,0 +1,164 @@
+package bench;
+
+import frontend.parser.SysYLexer;
+import frontend.parser.SysYParser;
+import manager.CompilationContext;
+import manager.Manager;
+import midend.MidEndRunner;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import util.Arg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 分阶段测量编译时间：词法、语法、生成IR、中端优化、LLVM输出、指令选择、寄存器分配、汇编输出
+ * 输入是按参数生成的SysY程序和testCases目录下的源文件，每个输入先预热若干次再计时，
+ * 每次迭代都使用新的CompilationContext走完整个流程，分别记录每个阶段的耗时
+ * 用法：java bench.PhaseBenchmark [-functions=1,10,100] [-nesting=1,3] [-array=16,1024]
+ *      [-cases=testCases] [-warmup=5] [-iterations=10] [-O1]
+ * 每行输出一个输入的一个阶段：输入名、阶段、平均毫秒、标准差、最小值，以制表符分隔便于CI解析
+ */
+public class PhaseBenchmark {
+    private static final String[] PHASES = {"lex", "parse", "visit", "midend", "llvm", "codegen", "regalloc", "arm"};
+
+    private int[] functionCounts = {1, 10, 100};
+    private int[] nestings = {1, 3};
+    private int[] arraySizes = {16, 1024};
+    private String casesDir = "testCases";
+    private int warmup = 5;
+    private int iterations = 10;
+    private boolean opt = false;
+
+    public static void main(String[] args) throws IOException {
+        PhaseBenchmark benchmark = new PhaseBenchmark();
+        benchmark.parseArgs(args);
+        benchmark.run();
+    }
+
+    private void parseArgs(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("-functions="))
+                functionCounts = parseList(arg);
+            else if (arg.startsWith("-nesting="))
+                nestings = parseList(arg);
+            else if (arg.startsWith("-array="))
+                arraySizes = parseList(arg);
+            else if (arg.startsWith("-cases="))
+                casesDir = arg.substring("-cases=".length());
+            else if (arg.startsWith("-warmup="))
+                warmup = Integer.parseInt(arg.substring("-warmup=".length()));
+            else if (arg.startsWith("-iterations="))
+                iterations = Integer.parseInt(arg.substring("-iterations=".length()));
+            else if (arg.equals("-O1"))
+                opt = true;
+            else
+                throw new RuntimeException("unknown option " + arg);
+        }
+    }
+
+    private static int[] parseList(String arg) {
+        String[] parts = arg.substring(arg.indexOf('=') + 1).split(",");
+        int[] ret = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ret[i] = Integer.parseInt(parts[i].trim());
+        }
+        return ret;
+    }
+
+    private void run() throws IOException {
+        // 输入名 -> 源代码，保持插入顺序使输出顺序固定
+        LinkedHashMap<String, String> inputs = new LinkedHashMap<>();
+        for (int functions : functionCounts) {
+            for (int nesting : nestings) {
+                for (int arraySize : arraySizes) {
+                    String name = "gen-f" + functions + "-n" + nesting + "-a" + arraySize;
+                    inputs.put(name, new SysYGenerator(functions, nesting, arraySize).generate());
+                }
+            }
+        }
+        Path cases = Paths.get(casesDir);
+        if (Files.isDirectory(cases)) {
+            try (Stream<Path> files = Files.walk(cases)) {
+                List<Path> sources = files.filter(p -> p.toString().endsWith(".c") || p.toString().endsWith(".sy"))
+                        .sorted().toList();
+                for (Path source : sources) {
+                    inputs.put(cases.relativize(source).toString(), Files.readString(source));
+                }
+            }
+        }
+
+        System.out.println("input\tphase\tmean_ms\tstddev_ms\tmin_ms");
+        for (var entry : inputs.entrySet()) {
+            long[][] samples = new long[PHASES.length][iterations];
+            for (int i = 0; i < warmup; i++) {
+                compileOnce(entry.getKey(), entry.getValue(), null, 0);
+            }
+            for (int i = 0; i < iterations; i++) {
+                compileOnce(entry.getKey(), entry.getValue(), samples, i);
+            }
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                printRow(entry.getKey(), PHASES[phase], samples[phase]);
+            }
+        }
+    }
+
+    // 完整编译一次，samples不为null时把每个阶段的耗时(纳秒)记入samples[阶段][iteration]
+    private void compileOnce(String name, String source, long[][] samples, int iteration) {
+        Arg arg = new Arg(name, "", "", opt, 60, 1, null, null);
+        CompilationContext context = new CompilationContext(arg);
+        context.run(() -> {
+            Manager manager = context.getManager();
+            long[] times = new long[PHASES.length + 1];
+            times[0] = System.nanoTime();
+            SysYLexer lexer = new SysYLexer(CharStreams.fromString(source, name));
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            tokens.fill();
+            times[1] = System.nanoTime();
+            ParseTree tree = new SysYParser(tokens).compUnit();
+            times[2] = System.nanoTime();
+            context.getVisitor().visit(tree);
+            times[3] = System.nanoTime();
+            new MidEndRunner(manager.getFunctions(), manager.getGlobals(), arg).run();
+            times[4] = System.nanoTime();
+            manager.outputLLVM(OutputStream.nullOutputStream());
+            times[5] = System.nanoTime();
+            context.getCodeGen().gen();
+            times[6] = System.nanoTime();
+            context.getRegAllocate().alloc();
+            times[7] = System.nanoTime();
+            manager.outputArm(OutputStream.nullOutputStream());
+            times[8] = System.nanoTime();
+            if (samples != null) {
+                for (int phase = 0; phase < PHASES.length; phase++) {
+                    samples[phase][iteration] = times[phase + 1] - times[phase];
+                }
+            }
+        });
+        context.close();
+    }
+
+    private static void printRow(String input, String phase, long[] samples) {
+        double mean = 0;
+        long min = Long.MAX_VALUE;
+        for (long sample : samples) {
+            mean += sample;
+            min = Math.min(min, sample);
+        }
+        mean /= samples.length;
+        double variance = 0;
+        for (long sample : samples) {
+            variance += (sample - mean) * (sample - mean);
+        }
+        double stddev = samples.length > 1 ? Math.sqrt(variance / (samples.length - 1)) : 0;
+        System.out.printf("%s\t%s\t%.3f\t%.3f\t%.3f%n", input, phase, mean / 1e6, stddev / 1e6, min / 1e6);
+    }
+}
@@ -0,0 +1,85 @@
+package bench;
+
+/**
+ * 生成用于测量编译时间的SysY程序，规模由函数个数、循环嵌套深度和数组大小决定
+ * 生成的程序语法和语义都合法，但不关心运行结果
+ */
+public class SysYGenerator {
+    private final int functions;
+    private final int nesting;
+    private final int arraySize;
+    private final StringBuilder sb = new StringBuilder();
+
+    public SysYGenerator(int functions, int nesting, int arraySize) {
+        this.functions = functions;
+        this.nesting = nesting;
+        this.arraySize = arraySize;
+    }
+
+    public String generate() {
+        sb.setLength(0);
+        sb.append("const int N = ").append(arraySize).append(";\n");
+        sb.append("int ga[N];\n");
+        sb.append("float gf[N];\n");
+        sb.append("int gcnt = 0;\n\n");
+        for (int i = 0; i < functions; i++) {
+            genFunction(i);
+        }
+        genMain();
+        return sb.toString();
+    }
+
+    // 每个函数：局部数组、nesting层嵌套循环、条件分支、浮点运算，并调用前一个函数
+    private void genFunction(int idx) {
+        sb.append("int f").append(idx).append("(int n, int a[]) {\n");
+        sb.append("    int loc[N];\n");
+        sb.append("    int s = n * ").append(idx % 7 + 1).append(";\n");
+        sb.append("    float x = ").append(idx % 5).append(".5;\n");
+        for (int d = 0; d < nesting; d++) {
+            indent(d + 1).append("int i").append(d).append(" = 0;\n");
+            indent(d + 1).append("while (i").append(d).append(" < N) {\n");
+        }
+        int depth = nesting + 1;
+        String idx0 = nesting > 0 ? "i" + (nesting - 1) : "0";
+        indent(depth).append("loc[").append(idx0).append("] = a[").append(idx0).append("] + s;\n");
+        indent(depth).append("if (loc[").append(idx0).append("] % 3 == 0 && s > 10) {\n");
+        indent(depth + 1).append("s = s + loc[").append(idx0).append("] / 2;\n");
+        indent(depth).append("} else {\n");
+        indent(depth + 1).append("s = s - ga[").append(idx0).append("] * ").append(idx % 3 + 2).append(";\n");
+        indent(depth).append("}\n");
+        indent(depth).append("x = x * 1.5 + gf[").append(idx0).append("];\n");
+        for (int d = nesting - 1; d >= 0; d--) {
+            indent(d + 2).append("i").append(d).append(" = i").append(d).append(" + 1;\n");
+            indent(d + 1).append("}\n");
+        }
+        if (idx > 0)
+            sb.append("    s = s + f").append(idx - 1).append("(s % 10, loc);\n");
+        sb.append("    gcnt = gcnt + 1;\n");
+        sb.append("    if (x > 100.0) s = s + 1;\n");
+        sb.append("    return s;\n");
+        sb.append("}\n\n");
+    }
+
+    private void genMain() {
+        sb.append("int main() {\n");
+        sb.append("    int i = 0;\n");
+        sb.append("    while (i < N) {\n");
+        sb.append("        ga[i] = i;\n");
+        sb.append("        gf[i] = i * 0.25;\n");
+        sb.append("        i = i + 1;\n");
+        sb.append("    }\n");
+        sb.append("    int r = 0;\n");
+        if (functions > 0)
+            sb.append("    r = f").append(functions - 1).append("(3, ga);\n");
+        sb.append("    putint(r);\n");
+        sb.append("    return 0;\n");
+        sb.append("}\n");
+    }
+
+    private StringBuilder indent(int level) {
+        for (int i = 0; i < level; i++) {
+            sb.append("    ");
+        }
+        return sb;
+    }
+}
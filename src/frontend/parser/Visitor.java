@@ -16,13 +16,14 @@ import java.util.ArrayList;
 import java.util.Stack;
 
 public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisitor<Value> {
-    public static final Visitor Instance = new Visitor();
+    private final Manager manager;
 
-    private Visitor() {
+    public Visitor(Manager manager) {
+        this.manager = manager;
+        this.CONST_0f = manager.getConstants().getFloat(0.0f);
+        this.CONST_0 = manager.getConstants().getInt(0);
     }
 
-    private final Manager manager = Manager.getManager();
-
     private Type defContextType = null;
     private OpTree current = new OpTree(new ArrayList<>(), new ArrayList<>(), null, null);
     private ArrayList<Function.Param> curFuncParams = null;
@@ -31,8 +32,8 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
     private BasicBlock curBasicBlock = null;
     private Function curFunction = null;
 
-    private Variable.ConstFloat CONST_0f = new Variable.ConstFloat(0.0f);
-    private Variable.ConstInt CONST_0 = new Variable.ConstInt(0);
+    private final Variable.ConstFloat CONST_0f;
+    private final Variable.ConstInt CONST_0;
 
     private final Stack<BasicBlock> blockFollows = new Stack<>();
     private final Stack<BasicBlock> blockHeads = new Stack<>();
@@ -75,10 +76,10 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
                 }
             } else {
                 if (value.getType().equals(Int32Type.getInstance())) {
-                    return new Icmp(value, new Variable.ConstInt(0), OpTree.Operator.Ne, curBasicBlock);
+                    return new Icmp(value, Variable.ConstInt.get(0), OpTree.Operator.Ne, curBasicBlock);
                 } else {
                     assert value.getType().equals(FloatType.getInstance());
-                    return new Fcmp(value, new Variable.ConstFloat(0), OpTree.Operator.Ne, curBasicBlock);
+                    return new Fcmp(value, Variable.ConstFloat.get(0), OpTree.Operator.Ne, curBasicBlock);
                 }
             }
 
@@ -129,7 +130,7 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
             lengths.add((Integer) Evaluate.evalConstExp(current.getLast()));
         }
         for (int i = lengths.size() - 1; i >= 0; i--) {
-            currentType = new ArrayType(currentType, lengths.get(i));
+            currentType = ArrayType.get(currentType, lengths.get(i));
         }
         // 获得初始化值的相关数据
         if (currentType instanceof ArrayType) {
@@ -137,8 +138,7 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
             if(constArray.getSize() == 0){
                 initVal = new InitVal(currentType, new Variable.ZeroInit(currentType));
             }else {
-                constArray = constArray.changeType((ArrayType) currentType);
-                initVal = new InitVal(currentType, constArray);
+                initVal = new InitVal(currentType, Variable.ArrayInit.of((ArrayType) currentType, constArray));
             }
         } else {
             initVal = new InitVal(currentType, visit(ctx.constInitVal()));
@@ -149,33 +149,7 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
             pointer = new Alloc(currentType, curBasicBlock);
             Type initType = initVal.getType();
             if (initType instanceof ArrayType) {
-                ArrayList<Value> idxList = new ArrayList<>();
-                for (int i = 0; i <= ((ArrayType) initType).getDims(); i++) {
-                    idxList.add(CONST_0);
-                }
-                Type contextType = ((ArrayType) initType).getContextType();
-                Value pl = new GetElementPtr(contextType, pointer, idxList, curBasicBlock);
-                if(initVal.getValue() instanceof Variable.VarArray){
-                    ArrayList<Value> flatten = initVal.flatten();
-                    new Store(turnTo(flatten.get(0), contextType), pl, curBasicBlock);
-                    for (int i = 1; i < flatten.size(); i++) {
-                        idxList = new ArrayList<>();
-                        idxList.add(new Variable.ConstInt(i));
-                        Value p = new GetElementPtr(contextType, pl, idxList, curBasicBlock);
-                        new Store(turnTo(flatten.get(i), contextType), p, curBasicBlock);
-                    }
-                }else {
-                    assert initVal.getValue() instanceof Variable.ZeroInit;
-                    ArrayList<Value> params = new ArrayList<>();
-                    Value newPl = pl;
-                    if(contextType instanceof FloatType){
-                        newPl = new BitCast( pl, new PointerType(Int32Type.getInstance()), curBasicBlock);
-                    }
-                    params.add(newPl);
-                    params.add(CONST_0);
-                    params.add(new Variable.ConstInt(((ArrayType) initType).getFattenSize() * 4));
-                    new Call(Manager.ExternFunction.MEM_SET, params, curBasicBlock);
-                }
+                initLocalArray(pointer, initVal, ident);
             } else if ((initType instanceof FloatType) || (initType instanceof Int32Type)) {
                 Value value = turnTo(initVal.getValue(), initType);
                 new Store(value, pointer, curBasicBlock);
@@ -200,24 +174,25 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
             var number = Evaluate.evalConstExp(current.getLast());
             if (number instanceof Integer) {
                 if (defContextType instanceof Int32Type) {
-                    return new Variable.ConstInt((int) number);
+                    return Variable.ConstInt.get((int) number);
                 } else {
                     assert defContextType instanceof FloatType;
-                    return new Variable.ConstFloat((float) ((int) number));
+                    return Variable.ConstFloat.get((float) ((int) number));
                 }
             } else {
                 assert number instanceof Float;
                 if (defContextType instanceof Int32Type) {
-                    return new Variable.ConstInt((int) ((float) number));
+                    return Variable.ConstInt.get((int) ((float) number));
                 } else {
                     assert defContextType instanceof FloatType;
-                    return new Variable.ConstFloat((float) number);
+                    return Variable.ConstFloat.get((float) number);
                 }
             }
         } else {
+            // constInitVal()每次调用都会新建列表，取一次后遍历，避免大数组的初值列表平方复杂度
             ret = new Variable.VarArray(null);
-            for (int i = 0; i < ctx.constInitVal().size(); i++) {
-                ((Variable.VarArray) ret).add((Variable) visit(ctx.constInitVal(i)));
+            for (SysYParser.ConstInitValContext child : ctx.constInitVal()) {
+                ((Variable.VarArray) ret).add(visit(child));
             }
         }
         return ret;
@@ -248,7 +223,7 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
             lengths.add((Integer) Evaluate.evalConstExp(current.getLast()));
         }
         for (int i = lengths.size() - 1; i >= 0; i--) {
-            currentType = new ArrayType(currentType, lengths.get(i));
+            currentType = ArrayType.get(currentType, lengths.get(i));
         }
         // 判断是否初始化
         if (ctx.initVal() != null) {
@@ -257,10 +232,7 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
                 if(varArray.getSize() == 0){
                     initVal = new InitVal(currentType, new Variable.ZeroInit(currentType));
                 } else{
-                    if(!isGlobal())
-                        varArray.setAddZero(false);
-                    varArray = varArray.changeType((ArrayType) currentType);
-                    initVal = new InitVal(currentType, varArray);
+                    initVal = new InitVal(currentType, Variable.ArrayInit.of((ArrayType) currentType, varArray));
                 }
             } else {
                 initVal = new InitVal(currentType, visit(ctx.initVal()));
@@ -285,51 +257,7 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
             if (initVal != null) {
                 Type initType = initVal.getType();
                 if (initType instanceof ArrayType) {
-                    ArrayList<Value> idxList = new ArrayList<>();
-                    for (int i = 0; i <= ((ArrayType) initType).getDims(); i++) {
-                        idxList.add(CONST_0);
-                    }
-                    Type contextType = ((ArrayType) initType).getContextType();
-                    Value pl = new GetElementPtr(contextType, pointer, idxList, curBasicBlock);
-                    if(initVal.getValue() instanceof Variable.VarArray){
-                        ArrayList<Value> flatten = initVal.flatten();
-                        // 存在undef需要memset一次
-                        for(int i = 0; i < flatten.size(); i++){
-                            if(flatten.get(i) instanceof Variable.Undef){
-                                ArrayList<Value> params = new ArrayList<>();
-                                Value newPl = pl;
-                                if(contextType instanceof FloatType){
-                                    newPl = new BitCast( pl, new PointerType(Int32Type.getInstance()), curBasicBlock);
-                                }
-                                params.add(newPl);
-                                params.add(CONST_0);
-                                params.add(new Variable.ConstInt(((ArrayType) initType).getFattenSize() * 4));
-                                new Call(Manager.ExternFunction.MEM_SET, params, curBasicBlock);
-                                break;
-                            }
-                        }
-                        if(!(flatten.get(0) instanceof Variable.Undef))
-                            new Store(turnTo(flatten.get(0), contextType), pl, curBasicBlock);
-                        for (int i = 1; i < flatten.size(); i++) {
-                            idxList = new ArrayList<>();
-                            idxList.add(new Variable.ConstInt(i));
-                            if(!(flatten.get(i) instanceof Variable.Undef)){
-                                Value p = new GetElementPtr(contextType, pl, idxList, curBasicBlock);
-                                new Store(turnTo(flatten.get(i), contextType), p, curBasicBlock);
-                            }
-                        }
-                    }else {
-                        assert initVal.getValue() instanceof Variable.ZeroInit;
-                        ArrayList<Value> params = new ArrayList<>();
-                        Value newPl = pl;
-                        if(contextType instanceof FloatType){
-                            newPl = new BitCast( pl, new PointerType(Int32Type.getInstance()), curBasicBlock);
-                        }
-                        params.add(newPl);
-                        params.add(CONST_0);
-                        params.add(new Variable.ConstInt(((ArrayType) initType).getFattenSize() * 4));
-                        new Call(Manager.ExternFunction.MEM_SET, params, curBasicBlock);
-                    }
+                    initLocalArray(pointer, initVal, ident);
                 }
                 else if ((initType instanceof FloatType) || (initType instanceof Int32Type)) {
                     Value value = turnTo(initVal.getValue(), initType);
@@ -347,6 +275,88 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
         return null;
     }
 
+    // 元素不超过这个数的局部数组逐个store全部元素(包括0)，不调用memset
+    private static final int UNROLL_LIMIT = 16;
+    // 非0常量元素至少有这么多、且占到1/4以上时，从只读常量表memcpy
+    private static final int TABLE_MIN = 32;
+
+    /**
+     * 局部数组的初始化，按初值的大小和密度选择：
+     * 数组很小时逐个store全部元素；非0常量多而密时在.rodata生成常量表，memcpy后再store非常量元素；
+     * 其余情况先memset为0(每个元素都要store时省去)，再store非0元素和非常量元素
+     */
+    private void initLocalArray(Value pointer, InitVal initVal, String ident) {
+        ArrayType initType = (ArrayType) initVal.getType();
+        ArrayList<Value> idxList = new ArrayList<>();
+        for (int i = 0; i <= initType.getDims(); i++) {
+            idxList.add(CONST_0);
+        }
+        Type contextType = initType.getContextType();
+        Value pl = new GetElementPtr(contextType, pointer, idxList, curBasicBlock);
+        int length = initType.getFattenSize();
+        Variable.ArrayInit arrayInit = initVal.getValue() instanceof Variable.ArrayInit ? initVal.getArrayInit() : null;
+        if (length <= UNROLL_LIMIT) {
+            Value zero = contextType instanceof FloatType ? CONST_0f : CONST_0;
+            for (int i = 0; i < length; i++) {
+                storeElement(pl, contextType, i, arrayInit == null ? zero : arrayInit.getValue(i));
+            }
+            return;
+        }
+        if (arrayInit == null) {
+            memsetZero(pl, contextType, length);
+            return;
+        }
+        int nonZero = arrayInit.getNonZeroCount();
+        if (nonZero >= TABLE_MIN && nonZero * 4 >= length) {
+            // 以函数名和alloca在函数内的编号命名，与其他函数无关，缓存的函数文本中引用的名字不变
+            String name = curFunction.getName() + "." + ident + "." + pointer.getIndex();
+            GlobalValue table = new GlobalValue(name, initType, new InitVal(initType, arrayInit.getConstPart()), true);
+            manager.addGlobal(table);
+            Value src = new GetElementPtr(contextType, table, idxList, curBasicBlock);
+            ArrayList<Value> params = new ArrayList<>();
+            params.add(toIntPointer(pl, contextType));
+            params.add(toIntPointer(src, contextType));
+            params.add(Variable.ConstInt.get(length * 4));
+            new Call(manager.externs.MEM_CPY, params, curBasicBlock);
+            for (int i = arrayInit.nextExplicit(0); i >= 0; i = arrayInit.nextExplicit(i + 1)) {
+                if (!arrayInit.isConst(i))
+                    storeElement(pl, contextType, i, arrayInit.getValue(i));
+            }
+            return;
+        }
+        if (nonZero + arrayInit.getNonConstCount() < length)
+            memsetZero(pl, contextType, length);
+        for (int i = arrayInit.nextExplicit(0); i >= 0; i = arrayInit.nextExplicit(i + 1)) {
+            if (!arrayInit.isConst(i) || arrayInit.getWord(i) != 0)
+                storeElement(pl, contextType, i, arrayInit.getValue(i));
+        }
+    }
+
+    private void storeElement(Value pl, Type contextType, int index, Value value) {
+        Value p = pl;
+        if (index > 0) {
+            ArrayList<Value> idxList = new ArrayList<>();
+            idxList.add(Variable.ConstInt.get(index));
+            p = new GetElementPtr(contextType, pl, idxList, curBasicBlock);
+        }
+        new Store(turnTo(value, contextType), p, curBasicBlock);
+    }
+
+    // memset和memcpy的参数都按i32*传递
+    private Value toIntPointer(Value pl, Type contextType) {
+        if (contextType instanceof FloatType)
+            return new BitCast(pl, PointerType.get(Int32Type.getInstance()), curBasicBlock);
+        return pl;
+    }
+
+    private void memsetZero(Value pl, Type contextType, int length) {
+        ArrayList<Value> params = new ArrayList<>();
+        params.add(toIntPointer(pl, contextType));
+        params.add(CONST_0);
+        params.add(Variable.ConstInt.get(length * 4));
+        new Call(manager.externs.MEM_SET, params, curBasicBlock);
+    }
+
     @Override
     public Value visitInitVal(SysYParser.InitValContext ctx) {
         Value ret;
@@ -356,18 +366,18 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
                 var number = Evaluate.evalConstExp(current.getLast());
                 if (number instanceof Integer) {
                     if (defContextType instanceof Int32Type) {
-                        ret = new Variable.ConstInt((int) number);
+                        ret = Variable.ConstInt.get((int) number);
                     } else {
                         assert defContextType instanceof FloatType;
-                        ret = new Variable.ConstFloat((float) ((int) number));
+                        ret = Variable.ConstFloat.get((float) ((int) number));
                     }
                 } else {
                     assert number instanceof Float;
                     if (defContextType instanceof Int32Type) {
-                        ret = new Variable.ConstInt((int) ((float) number));
+                        ret = Variable.ConstInt.get((int) ((float) number));
                     } else {
                         assert defContextType instanceof FloatType;
-                        ret = new Variable.ConstFloat((float) number);
+                        ret = Variable.ConstFloat.get((float) number);
                     }
                 }
             } else {
@@ -375,8 +385,8 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
             }
         } else {
             ret = new Variable.VarArray(null);
-            for (int i = 0; i < ctx.initVal().size(); i++) {
-                ((Variable.VarArray) ret).add(visit(ctx.initVal(i)));
+            for (SysYParser.InitValContext child : ctx.initVal()) {
+                ((Variable.VarArray) ret).add(visit(child));
             }
         }
         return ret;
@@ -398,6 +408,7 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
         entry.addFunction(function);
         if (ctx.funcFParams() != null) {
             visit(ctx.funcFParams());
+            function.numberParams();
             for (Function.Param param : curFuncParams) {
                 Value paramPointer = new Alloc(param.getType(), curBasicBlock);
                 new Store(param, paramPointer, curBasicBlock);
@@ -462,9 +473,9 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
                 lengths.add((Integer) Evaluate.evalConstExp(current.getLast()));
             }
             for (int i = lengths.size() - 1; i >= 0; i--) {
-                curType = new ArrayType(curType, lengths.get(i));
+                curType = ArrayType.get(curType, lengths.get(i));
             }
-            curType = new PointerType(curType);
+            curType = PointerType.get(curType);
         }
         curFuncParams.add(new Function.Param(ident, curType));
         return null;
@@ -713,7 +724,7 @@ public class Visitor extends AbstractParseTreeVisitor<Value> implements SysYVisi
             visit(ctx.primaryExp());
         } else if (ctx.IDENT() != null) {
             String ident = ctx.IDENT().getText();
-            Function function = Manager.getFunctions().get(ident);
+            Function function = manager.getFunctions().get(ident);
             assert function != null;
             ArrayList<Value> params = new ArrayList<>();
             OpTree opTree = new OpTree(current, OpTree.OpType.funcType);
@@ -4,10 +4,6 @@ import ir.Value;
 import ir.Variable;
 import ir.type.ArrayType;
 import ir.type.Type;
-import util.MyList;
-import util.MyNode;
-
-import java.util.ArrayList;
 
 public class InitVal {
     public final Type type;
@@ -26,9 +22,9 @@ public class InitVal {
         return value;
     }
 
-    public ArrayList<Value> flatten(){
+    public Variable.ArrayInit getArrayInit(){
         assert type instanceof ArrayType;
-        return  ((Variable.VarArray) value).flatten();
+        return (Variable.ArrayInit) value;
     }
 
     @Override
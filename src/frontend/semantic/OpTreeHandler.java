@@ -10,16 +10,22 @@ import ir.Value;
 import ir.instruction.*;
 import ir.type.*;
 import ir.Variable;
+import manager.CompilationContext;
 
 public class OpTreeHandler {
 
+    // 当前线程正在编译的源文件的Visitor
+    private static Visitor visitor() {
+        return CompilationContext.current().getVisitor();
+    }
+
     private static Value turnToInt1(Value value, BasicBlock curBasicBlock) {
         if (value.getType().equals(Int1Type.getInstance())) {
             return value;
         } else if (value.getType().equals(Int32Type.getInstance())) {
-            return new Icmp(value, new Variable.ConstInt(0), OpTree.Operator.Ne, curBasicBlock);
+            return new Icmp(value, Variable.ConstInt.get(0), OpTree.Operator.Ne, curBasicBlock);
         } else {
-            return new Fcmp(value, new Variable.ConstFloat(0), OpTree.Operator.Ne, curBasicBlock);
+            return new Fcmp(value, Variable.ConstFloat.get(0), OpTree.Operator.Ne, curBasicBlock);
         }
 
     }
@@ -31,10 +37,10 @@ public class OpTreeHandler {
             return evalUnaryExp(opTree, basicBlock);
         } else if (opTree.getType() == OpTree.OpType.number) {
             if (opTree.getNumberType() == ConstNumber.NumberType.Float) {
-                return new Variable.ConstFloat((float) opTree.getNumber());
+                return Variable.ConstFloat.get((float) opTree.getNumber());
             } else {
                 assert opTree.getNumberType() == ConstNumber.NumberType.INT;
-                return new Variable.ConstInt((int) opTree.getNumber());
+                return Variable.ConstInt.get((int) opTree.getNumber());
             }
         } else if (opTree.getType() == OpTree.OpType.loadType){
             return new Load(opTree.getValue(), basicBlock);
@@ -49,7 +55,7 @@ public class OpTreeHandler {
                 Value value = evalExp(it.next(), basicBlock);
                 Function.Param param = function.getParams().get(i);
                 if (param.getType() instanceof Int32Type || param.getType() instanceof FloatType) {
-                    value = Visitor.Instance.turnTo(value, param.getType());
+                    value = visitor().turnTo(value, param.getType());
                 }
                 params.add(value);
                 i ++;
@@ -70,7 +76,7 @@ public class OpTreeHandler {
         Iterator<OpTree> it = opTree.getChildren().listIterator();
         while (it.hasNext()){
             Value offset = OpTreeHandler.evalExp(it.next(), basicBlock);
-            offset = Visitor.Instance.turnTo(offset, Int32Type.getInstance());
+            offset = visitor().turnTo(offset, Int32Type.getInstance());
             if(first)
             {
                 first = false;
@@ -80,7 +86,7 @@ public class OpTreeHandler {
                 }else{
                     assert basicType instanceof ArrayType;
                     basicType = basicType.getBasicType();
-                    idxList.add(Visitor.Instance.getCONST_0());
+                    idxList.add(visitor().getCONST_0());
                 }
                 idxList.add(offset);
             }else{
@@ -97,8 +103,8 @@ public class OpTreeHandler {
         Value value;
         if(basicType instanceof ArrayType){
             idxList =  new ArrayList<>();
-            idxList.add(Visitor.Instance.getCONST_0());
-            idxList.add(Visitor.Instance.getCONST_0());
+            idxList.add(visitor().getCONST_0());
+            idxList.add(visitor().getCONST_0());
             value = new GetElementPtr(basicType.getBasicType(), pointer, idxList, basicBlock);
         }else {
             value =  new Load(pointer, basicBlock);
@@ -118,12 +124,12 @@ public class OpTreeHandler {
             Type currentType = null;
             if(first.getType() instanceof FloatType || second.getType() instanceof FloatType) {
                 currentType = FloatType.getInstance();
-                first = Visitor.Instance.turnTo(first,FloatType.getInstance());
-                second = Visitor.Instance.turnTo(second,FloatType.getInstance());
+                first = visitor().turnTo(first,FloatType.getInstance());
+                second = visitor().turnTo(second,FloatType.getInstance());
             } else {
                 currentType = Int32Type.getInstance();
-                first = Visitor.Instance.turnTo(first,Int32Type.getInstance());
-                second = Visitor.Instance.turnTo(second,Int32Type.getInstance());
+                first = visitor().turnTo(first,Int32Type.getInstance());
+                second = visitor().turnTo(second,Int32Type.getInstance());
             }
             first = new Binary(currentType, itOp.next(), first, second, basicBlock);
         }
@@ -140,7 +146,7 @@ public class OpTreeHandler {
         }
         else{
             if(val.getType() instanceof Int1Type)
-                val = Visitor.Instance.turnTo(val, Int32Type.getInstance());
+                val = visitor().turnTo(val, Int32Type.getInstance());
             val = new Unary(val.getType(), op, val, basicBlock);
         }
 
@@ -151,7 +157,7 @@ public class OpTreeHandler {
         if (opTree.getType() == OpTree.OpType.condType) {
             return evalBinaryCond(opTree, trueBlock, falseBlock);
         } else {
-            return evalExp(opTree, Visitor.Instance.getCurBasicBlock());
+            return evalExp(opTree, visitor().getCurBasicBlock());
         }
     }
 
@@ -173,18 +179,18 @@ public class OpTreeHandler {
 
 
             if (op == OpTree.Operator.And) { // and时，左右都为Int1
-                BasicBlock newTrueBlock = new BasicBlock(Visitor.Instance.getCurBasicBlock().getFunction());
-                first = Visitor.Instance.turnTo(first, Int1Type.getInstance());
-                new Branch(first, newTrueBlock, falseBlock, Visitor.Instance.getCurBasicBlock());
-                Visitor.Instance.setCurBasicBlock(newTrueBlock);
+                BasicBlock newTrueBlock = new BasicBlock(visitor().getCurBasicBlock().getFunction());
+                first = visitor().turnTo(first, Int1Type.getInstance());
+                new Branch(first, newTrueBlock, falseBlock, visitor().getCurBasicBlock());
+                visitor().setCurBasicBlock(newTrueBlock);
                 first = evalCond(child, null, null);
             } else if (op == OpTree.Operator.Or) {// or时，左右都为Int1
                 if(it.hasNext()) {
-                    BasicBlock newFalseBlock = new BasicBlock(Visitor.Instance.getCurBasicBlock().getFunction());
+                    BasicBlock newFalseBlock = new BasicBlock(visitor().getCurBasicBlock().getFunction());
                     first = evalCond(child, trueBlock, newFalseBlock);
-                    first = Visitor.Instance.turnTo(first, Int1Type.getInstance());
-                    new Branch(first, trueBlock, newFalseBlock, Visitor.Instance.getCurBasicBlock());
-                    Visitor.Instance.setCurBasicBlock(newFalseBlock);
+                    first = visitor().turnTo(first, Int1Type.getInstance());
+                    new Branch(first, trueBlock, newFalseBlock, visitor().getCurBasicBlock());
+                    visitor().setCurBasicBlock(newFalseBlock);
                 }
                 else
                 {
@@ -193,17 +199,17 @@ public class OpTreeHandler {
             } else {// 比较运算时，根据左边和右边的类型进行相应转换
                 second = evalCond(child, trueBlock, falseBlock);
                 if (first.getType() instanceof FloatType || second.getType() instanceof FloatType) {// 其中有一个float则都为float
-                    first = Visitor.Instance.turnTo(first, FloatType.getInstance());
-                    second = Visitor.Instance.turnTo(second, FloatType.getInstance());
-                    first = new Fcmp(first, second, op, Visitor.Instance.getCurBasicBlock());
+                    first = visitor().turnTo(first, FloatType.getInstance());
+                    second = visitor().turnTo(second, FloatType.getInstance());
+                    first = new Fcmp(first, second, op, visitor().getCurBasicBlock());
                 } else if (first.getType() instanceof Int32Type || second.getType() instanceof Int32Type) {// 其中有一个int则都为int
-                    first = Visitor.Instance.turnTo(first, Int32Type.getInstance());
-                    second = Visitor.Instance.turnTo(second, Int32Type.getInstance());
-                    first = new Icmp(first, second, op, Visitor.Instance.getCurBasicBlock());
+                    first = visitor().turnTo(first, Int32Type.getInstance());
+                    second = visitor().turnTo(second, Int32Type.getInstance());
+                    first = new Icmp(first, second, op, visitor().getCurBasicBlock());
                 } else {
                     assert op == OpTree.Operator.Eq || op == OpTree.Operator.Ne;// 只有ne和eq的两边才可能为int1
                     assert first.getType() instanceof Int1Type && second.getType() instanceof Int1Type;
-                    first = new Icmp(first, second, op, Visitor.Instance.getCurBasicBlock());
+                    first = new Icmp(first, second, op, visitor().getCurBasicBlock());
                 }
             }
         }
@@ -4,9 +4,12 @@ import ir.instruction.Call;
 import ir.instruction.Instr;
 import ir.instruction.Jump;
 import ir.instruction.Return;
+import util.Emitter;
 import util.MyList;
+import util.MyNode;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 
 public class BasicBlock extends Value {
     private Function function;
@@ -17,22 +20,50 @@ public class BasicBlock extends Value {
     public ArrayList<BasicBlock> succBBlocks = new ArrayList<>();
 
 
+    // 支配树相关信息，由DomAnalysis计算
+    private BasicBlock idom;
+    private final ArrayList<BasicBlock> idoms = new ArrayList<>(); // 被当前块直接支配的块
+    private final HashSet<BasicBlock> domFrontier = new HashSet<>();
+    private int domLevel;
+
+    // 包含当前块的最内层循环，由LoopAnalysis计算
+    private Loop loop;
+
     private int label;
-    private static Integer block_count = 0;
 
+    // 还不属于任何函数的块，加入函数时再编号
     public BasicBlock() {
-        this.label = ++block_count;
-        this.name = "b" + this.label;
     }
 
     public BasicBlock(Function function) {
-        this.label = ++block_count;
+        this.label = function.nextBlockId();
         this.name = "b" + this.label;
         this.function = function;
         function.addAtEnd(this);
     }
 
+    // 新建基本块并插入到函数中pos之前，用于优化时拆分边
+    public BasicBlock(Function function, BasicBlock pos) {
+        this.label = function.nextBlockId();
+        this.name = "b" + this.label;
+        this.function = function;
+        function.getBasicBlocks().insertBefore(pos, this);
+    }
+
+    // 以编号作为哈希值，哈希表的遍历顺序只取决于输入程序，常驻模式下多次编译的输出与单次运行一致
+    @Override
+    public int hashCode() {
+        return label;
+    }
+
+    // 在所属函数内的编号，用作数组/BitSet的下标，上界见Function.getBlockIdBound
+    public int getLabel() {
+        return label;
+    }
+
     public void addFunction(Function function) {
+        this.label = function.nextBlockId();
+        this.name = "b" + this.label;
         this.function = function;
         function.addAtEnd(this);
     }
@@ -49,6 +80,14 @@ public class BasicBlock extends Value {
         instrs.insertTail(instr);
     }
 
+    // 把first及其之后的指令整体移到当前块末尾，保留它们的使用关系
+    public void spliceInstrs(Instr first) {
+        instrs.spliceTail(first);
+        for (MyNode node = first; node instanceof Instr; node = node.getNext()) {
+            ((Instr) node).setBasicBlock(this);
+        }
+    }
+
     public boolean isTerminated() {
         if(instrs.size() == 0)
             return false;
@@ -59,10 +98,61 @@ public class BasicBlock extends Value {
         return instrs.getLast();
     }
 
+    public BasicBlock getIdom() {
+        return idom;
+    }
+
+    public void setIdom(BasicBlock idom) {
+        this.idom = idom;
+    }
+
+    public ArrayList<BasicBlock> getIdoms() {
+        return idoms;
+    }
+
+    public HashSet<BasicBlock> getDomFrontier() {
+        return domFrontier;
+    }
+
+    public int getDomLevel() {
+        return domLevel;
+    }
+
+    public void setDomLevel(int domLevel) {
+        this.domLevel = domLevel;
+    }
+
+    // 当前块是否支配block
+    public boolean dominates(BasicBlock block) {
+        while (block != null && block.domLevel > this.domLevel) {
+            block = block.idom;
+        }
+        return block == this;
+    }
+
+    public Loop getLoop() {
+        return loop;
+    }
+
+    public void setLoop(Loop loop) {
+        this.loop = loop;
+    }
+
+    public int getLoopDepth() {
+        return loop == null ? 0 : loop.getDepth();
+    }
+
     public Function getFunction() {
         return function;
     }
 
+    public void output(Emitter emitter) {
+        emitter.print(name).print(":\n");
+        for (Instr instr : instrs) {
+            emitter.print('\t').print(instr.toString()).print('\n');
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,47 @@
+package ir;
+
+import ir.type.FloatType;
+import ir.type.Int1Type;
+import ir.type.Int32Type;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一次编译中的整数和浮点常量，相同的值只有一个对象，可以直接用==比较
+ * 常量带有使用链，因此每次编译各有一份；各函数并行优化时也会创建常量，表需要支持并发访问
+ */
+public class ConstantPool {
+    // 常用的小整数直接放在数组里，避免装箱和查表
+    private static final int SMALL_MIN = -128;
+    private static final int SMALL_MAX = 256;
+
+    private final Variable.ConstInt[] smallInts = new Variable.ConstInt[SMALL_MAX - SMALL_MIN];
+    private final ConcurrentHashMap<Integer, Variable.ConstInt> ints = new ConcurrentHashMap<>();
+    private final Variable.ConstInt[] bools = new Variable.ConstInt[2];
+    // 以浮点数的位模式为键，区分0.0和-0.0
+    private final ConcurrentHashMap<Integer, Variable.ConstFloat> floats = new ConcurrentHashMap<>();
+
+    public ConstantPool() {
+        for (int i = 0; i < smallInts.length; i++) {
+            smallInts[i] = new Variable.ConstInt(SMALL_MIN + i, Int32Type.getInstance());
+        }
+        bools[0] = new Variable.ConstInt(0, Int1Type.getInstance());
+        bools[1] = new Variable.ConstInt(1, Int1Type.getInstance());
+    }
+
+    public Variable.ConstInt getInt(int value) {
+        if (value >= SMALL_MIN && value < SMALL_MAX)
+            return smallInts[value - SMALL_MIN];
+        return ints.computeIfAbsent(value, v -> new Variable.ConstInt(v, Int32Type.getInstance()));
+    }
+
+    // i1常量，只有0和1
+    public Variable.ConstInt getBool(int value) {
+        assert value == 0 || value == 1;
+        return bools[value];
+    }
+
+    public Variable.ConstFloat getFloat(float value) {
+        return floats.computeIfAbsent(Float.floatToRawIntBits(value), bits -> new Variable.ConstFloat(value, FloatType.getInstance()));
+    }
+}
@@ -1,8 +1,7 @@
 package ir;
 
-import ir.instruction.Instr;
 import ir.type.Type;
-import manager.Manager;
+import util.Emitter;
 import util.MyList;
 
 import java.util.ArrayList;
@@ -10,21 +9,86 @@ import java.util.ArrayList;
 public class Function extends Value {
     private ArrayList<Param> params;
     private MyList<BasicBlock> basicBlocks = new MyList<>();
+    private boolean pure = false; // 不读写非局部内存且没有其他副作用，由FuncAnalysis计算
+    private boolean external = false; // 运行时库函数，由Manager标记
+    private ArrayList<Loop> loops = new ArrayList<>(); // 所有循环，外层循环在前，由LoopAnalysis计算
+    // 指令和基本块在函数内编号，各函数并行优化时编号(以及以编号为哈希值的遍历顺序)仍然确定
+    // 形参先于指令编号，两者共用一套编号，以编号为下标的表可以同时存放形参和指令
+    private int instrCount = 0;
+    private int blockCount = 0;
 
     public Function(String name, ArrayList<Param> params, Type type) {
         this.name = name;
         this.params = params;
         this.type = type;
+        if (params != null)
+            numberParams();
+    }
+
+    // 为还没有编号的形参编号，前端在创建函数之后才逐个加入形参；形参的名字也按函数内的编号取，与其他函数无关
+    public void numberParams() {
+        for (Param param : params) {
+            if (param.index < 0) {
+                param.index = nextInstrId();
+                if (param.paramName != null)
+                    param.name = "%f" + param.index;
+            }
+        }
     }
 
     public boolean isExternal(){
-        return Manager.getExternalFunctions().containsValue(this);
+        return external;
+    }
+
+    public void setExternal() {
+        this.external = true;
+    }
+
+    public boolean isPure() {
+        return pure;
+    }
+
+    public void setPure(boolean pure) {
+        this.pure = pure;
+    }
+
+    public int nextInstrId() {
+        return instrCount++;
+    }
+
+    public int nextBlockId() {
+        return ++blockCount;
+    }
+
+    // 形参和指令编号的上界(不含)，用于确定以编号为下标的数组大小
+    public int getValueIdBound() {
+        return instrCount;
+    }
+
+    // 基本块编号的上界(不含)，基本块从1开始编号
+    public int getBlockIdBound() {
+        return blockCount + 1;
+    }
+
+    // 函数可能同时被多个并行优化的函数调用，使用记录的修改需要同步
+    @Override
+    public synchronized void addUsed(Used used) {
+        super.addUsed(used);
+    }
+
+    @Override
+    public synchronized void removeUsed(Used used) {
+        super.removeUsed(used);
+    }
+
+    public ArrayList<Loop> getLoops() {
+        return loops;
     }
 
     public static class Param extends Value {
         public String paramName;
+        private int index = -1;
         public Param(String name, Type type) {
-            this.name = "%f" + Instr.getCount();
             this.paramName = name;
             this.type = type;
         }
@@ -38,6 +102,11 @@ public class Function extends Value {
             return paramName;
         }
 
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
         @Override
         public String toString() {
             return type + " " + name;
@@ -48,6 +117,11 @@ public class Function extends Value {
         return basicBlocks;
     }
 
+    // 入口块，即第一个基本块
+    public BasicBlock getEntry() {
+        return basicBlocks.getFirst();
+    }
+
     public ArrayList<Param> getParams() {
         return params;
     }
@@ -60,6 +134,10 @@ public class Function extends Value {
         basicBlocks.insertTail(basicBlock);
     }
 
+    public void removeBlock(BasicBlock basicBlock) {
+        basicBlocks.remove(basicBlock);
+    }
+
     public static ArrayList<Param> packParamTypes(Type... types) {
         ArrayList<Param> params = new ArrayList<>();
         for (Type type : types) {
@@ -68,8 +146,8 @@ public class Function extends Value {
         return params;
     }
 
-    @Override
-    public String toString() {
+    // 函数头，到左花括号为止
+    private String header() {
         StringBuilder sb = new StringBuilder();
         sb.append("define dso_local ").append(type.toString()).append(" @").append(name).append("(");
         ArrayList<String> paramList = new ArrayList<>();
@@ -82,6 +160,21 @@ public class Function extends Value {
             sb.append(String.join(", ", paramList)).append(") \n{\n");
 
         }
+        return sb.toString();
+    }
+
+    // 逐条指令写出，不拼接整个函数的字符串
+    public void output(Emitter emitter) {
+        emitter.print(header());
+        for (BasicBlock basicBlock : basicBlocks) {
+            basicBlock.output(emitter);
+        }
+        emitter.print("}\n");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(header());
         for (BasicBlock basicBlock : basicBlocks) {
             sb.append(basicBlock.toString());
         }
@@ -1,21 +1,109 @@
 package ir;
 
 import frontend.semantic.InitVal;
+import ir.type.ArrayType;
 import ir.type.PointerType;
 import ir.type.Type;
+import util.Emitter;
 
 public class GlobalValue extends Value {
     public InitVal initVal;
+    private final boolean constant; // 编译器生成的只读常量表，放在.rodata段，不导出符号
 
     public GlobalValue(String name, Type type, InitVal initVal) {
-        this.type = new PointerType(type);
+        this(name, type, initVal, false);
+    }
+
+    public GlobalValue(String name, Type type, InitVal initVal, boolean constant) {
+        this.type = PointerType.get(type);
         this.name = "@" + name;
         this.initVal = initVal;
+        this.constant = constant;
+    }
+
+    public boolean isConstant() {
+        return constant;
     }
 
     @Override
     public String toString() {
-        return name + " = dso_local global " + initVal.toString() + "\n";
+        return name + getLinkage() + initVal.toString() + "\n";
+    }
+
+    private String getLinkage() {
+        return constant ? " = private unnamed_addr constant " : " = dso_local global ";
     }
 
+    // 全局变量被所有函数共享，并行优化各函数时使用记录的修改需要同步
+    @Override
+    public synchronized void addUsed(Used used) {
+        super.addUsed(used);
+    }
+
+    @Override
+    public synchronized void removeUsed(Used used) {
+        super.removeUsed(used);
+    }
+
+    // 零初始化的全局变量放在.bss段
+    public boolean isZeroInit() {
+        Value value = initVal.getValue();
+        if (value instanceof Variable.ZeroInit)
+            return true;
+        if (value instanceof Variable.ArrayInit)
+            return ((Variable.ArrayInit) value).isZero();
+        return isZero(value);
+    }
+
+    private static boolean isZero(Value value) {
+        if (value instanceof Variable.ConstInt)
+            return ((Variable.ConstInt) value).getIntVal() == 0;
+        if (value instanceof Variable.ConstFloat)
+            return Float.floatToRawIntBits(((Variable.ConstFloat) value).getFloatVal()) == 0;
+        return true;
+    }
+
+    // 输出LLVM中的定义，数组初值直接写入emitter，不拼接整个字符串
+    public void output(Emitter emitter) {
+        emitter.print(name).print(getLinkage()).print(initVal.getType().toString()).print(' ');
+        if (initVal.getValue() instanceof Variable.ArrayInit)
+            ((Variable.ArrayInit) initVal.getValue()).output(emitter);
+        else
+            emitter.print(initVal.getValue().toString());
+        emitter.println();
+    }
+
+    // 输出汇编中的数据定义，连续的0合并为一条.zero
+    public void outputArm(Emitter emitter) {
+        String label = name.substring(1);
+        Type type = getType().getBasicType();
+        int size = type instanceof ArrayType ? ((ArrayType) type).getFattenSize() * 4 : 4;
+        emitter.println("\t.align 2");
+        if (!constant)
+            emitter.print("\t.global ").println(label);
+        emitter.print(label).println(":");
+        if (isZeroInit()) {
+            emitter.print("\t.space ").println(Integer.toString(size));
+            return;
+        }
+        Value value = initVal.getValue();
+        if (!(value instanceof Variable.ArrayInit)) {
+            int word = value instanceof Variable.ConstInt ? ((Variable.ConstInt) value).getIntVal()
+                    : Float.floatToRawIntBits(((Variable.ConstFloat) value).getFloatVal());
+            emitter.print("\t.word ").println(Integer.toString(word));
+            return;
+        }
+        // 全局数组的初值都是常量，按非0元素之间的间隔输出.zero
+        Variable.ArrayInit arrayInit = (Variable.ArrayInit) value;
+        int length = arrayInit.getLength();
+        int pos = 0;
+        for (int i = arrayInit.nextNonZero(0); i < length; i = arrayInit.nextNonZero(i + 1)) {
+            if (i > pos)
+                emitter.print("\t.zero ").println(Integer.toString((i - pos) * 4));
+            emitter.print("\t.word ").println(Integer.toString(arrayInit.getWord(i)));
+            pos = i + 1;
+        }
+        if (length > pos)
+            emitter.print("\t.zero ").println(Integer.toString((length - pos) * 4));
+    }
 }
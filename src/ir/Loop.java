@@ -0,0 +1,73 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * 自然循环，由LoopAnalysis根据回边求出
+ * 规范化之后每个循环有唯一的前置块(preheader)，所有出口块只有循环内的前驱
+ */
+public class Loop {
+    private final BasicBlock header;
+    private final HashSet<BasicBlock> blocks = new HashSet<>();
+    private final ArrayList<BasicBlock> latches = new ArrayList<>(); // 跳回header的块
+    private final ArrayList<BasicBlock> exitBlocks = new ArrayList<>(); // 循环外、有循环内前驱的块
+    private final ArrayList<Loop> subLoops = new ArrayList<>();
+    private Loop parent;
+    private BasicBlock preheader;
+    private int depth = 1;
+
+    public Loop(BasicBlock header) {
+        this.header = header;
+        blocks.add(header);
+    }
+
+    public BasicBlock getHeader() {
+        return header;
+    }
+
+    public HashSet<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    public boolean contains(BasicBlock basicBlock) {
+        return blocks.contains(basicBlock);
+    }
+
+    public ArrayList<BasicBlock> getLatches() {
+        return latches;
+    }
+
+    public ArrayList<BasicBlock> getExitBlocks() {
+        return exitBlocks;
+    }
+
+    public ArrayList<Loop> getSubLoops() {
+        return subLoops;
+    }
+
+    public Loop getParent() {
+        return parent;
+    }
+
+    public void setParent(Loop parent) {
+        this.parent = parent;
+    }
+
+    // 入口块作为循环头时没有前置块，返回null
+    public BasicBlock getPreheader() {
+        return preheader;
+    }
+
+    public void setPreheader(BasicBlock preheader) {
+        this.preheader = preheader;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+}
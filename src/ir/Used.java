@@ -4,12 +4,35 @@ import ir.instruction.Instr;
 import util.MyNode;
 
 // 保存使用相关信息，新建的主要原因是为了解决一个MyNode职能有一个前驱和后继的问题
+// 每个Used对应user的一个操作数位置，替换操作数时直接移动该节点，不需要扫描使用链
 public class Used extends MyNode {
     private Instr user;
-    private Value use;
+    private Value value;
+    private int idx; // 在user操作数列表中的下标
 
-    public Used(Instr user, Value use){
+    public Used(Instr user, Value value, int idx){
         this.user = user;
-        this.use = use;
+        this.value = value;
+        this.idx = idx;
+    }
+
+    public Instr getUser() {
+        return user;
+    }
+
+    public Value getValue() {
+        return value;
+    }
+
+    public void setValue(Value value) {
+        this.value = value;
+    }
+
+    public int getIdx() {
+        return idx;
+    }
+
+    public void setIdx(int idx) {
+        this.idx = idx;
     }
 }
@@ -4,8 +4,6 @@ import ir.type.Type;
 import util.MyList;
 import util.MyNode;
 
-import java.util.ArrayList;
-
 public class Value extends MyNode {
     public Type type;
     public String name;
@@ -23,6 +21,11 @@ public class Value extends MyNode {
         return name;
     }
 
+    // 在所属函数内的稠密编号(指令和形参共用一套编号)，用作数组/BitSet的下标；常量、全局变量和函数没有编号
+    public int getIndex() {
+        return -1;
+    }
+
     public MyList<Used> getUsedInfo() {
         return usedInfo;
     }
@@ -30,4 +33,23 @@ public class Value extends MyNode {
     public void addUsed(Used used){
         usedInfo.insertTail(used);
     }
+
+    // 删除一次使用记录，O(1)
+    public void removeUsed(Used used){
+        usedInfo.remove(used);
+    }
+
+    public boolean isUsed(){
+        return !usedInfo.isEmpty();
+    }
+
+    // 将所有使用当前value的地方替换为value，每次替换都会把使用节点移到value的使用链上
+    public void replaceAllUseWith(Value value){
+        if(value == this)
+            return;
+        while(!usedInfo.isEmpty()){
+            Used used = usedInfo.getFirst();
+            used.getUser().setUse(used.getIdx(), value);
+        }
+    }
 }
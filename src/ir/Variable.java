@@ -2,11 +2,18 @@ package ir;
 
 import ir.type.ArrayType;
 import ir.type.FloatType;
+import ir.type.Int1Type;
 import ir.type.Int32Type;
 import ir.type.Type;
+import manager.CompilationContext;
+import util.Emitter;
+import util.IntMap;
 import util.MyList;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.BitSet;
 
 public class Variable extends Value {
 
@@ -14,57 +21,92 @@ public class Variable extends Value {
         this.type = type;
     }
 
+    // 常量对象可能被多个函数共用，并行优化各函数时使用记录的修改需要同步
+    @Override
+    public synchronized void addUsed(Used used) {
+        super.addUsed(used);
+    }
+
+    @Override
+    public synchronized void removeUsed(Used used) {
+        super.removeUsed(used);
+    }
+
+    // 常量由ConstantPool统一创建，值相同的常量是同一个对象；名字在第一次输出时才生成
     public static class ConstInt extends Variable {
-        Integer intVal;
+        private final int intVal;
 
-        public ConstInt(int intVal) {
-            super(Int32Type.getInstance());
+        ConstInt(int intVal, Type type) {
+            super(type);
             this.intVal = intVal;
-            this.name = ((Integer)intVal).toString();
         }
 
-        public Integer getIntVal() {
+        public static ConstInt get(int intVal) {
+            return CompilationContext.current().getManager().getConstants().getInt(intVal);
+        }
+
+        // 用于i1等其他整数类型的常量
+        public static ConstInt get(int intVal, Type type) {
+            if (type instanceof Int1Type)
+                return CompilationContext.current().getManager().getConstants().getBool(intVal);
+            assert type instanceof Int32Type;
+            return get(intVal);
+        }
+
+        public int getIntVal() {
             return intVal;
         }
 
+        @Override
+        public String getName() {
+            if (name == null)
+                name = Integer.toString(intVal);
+            return name;
+        }
+
         @Override
         public String toString() {
-            return intVal.toString();
+            return getName();
         }
     }
 
     public static class ConstFloat extends Variable {
-        Float floatVal;
+        private final float floatVal;
 
-        public ConstFloat(float floatVal) {
-            super(FloatType.getInstance());
+        ConstFloat(float floatVal, Type type) {
+            super(type);
             this.floatVal = floatVal;
-            this.name = String.format("0x%x", Double.doubleToRawLongBits((floatVal)));
         }
 
-        public Float getFloatVal() {
+        public static ConstFloat get(float floatVal) {
+            return CompilationContext.current().getManager().getConstants().getFloat(floatVal);
+        }
+
+        public float getFloatVal() {
             return floatVal;
         }
 
+        @Override
+        public String getName() {
+            if (name == null)
+                name = String.format("0x%x", Double.doubleToRawLongBits(floatVal));
+            return name;
+        }
+
         @Override
         public String toString() {
-            String out = String.format("0x%x", Double.doubleToRawLongBits((floatVal)));
-            return out;
+            return getName();
         }
     }
 
+    // 初值列表，只是语法上花括号嵌套的结构，需要经过ArrayInit.of转换为数组的初值
     public static class VarArray extends Variable {
-        private ArrayList<Value> varArray = new ArrayList<>();
-        private boolean addZero = true;
+        private final ArrayList<Value> varArray = new ArrayList<>();
 
         public VarArray(Type type) {
             super(type);
         }
 
-        public void setAddZero(boolean addZero) {
-            this.addZero = addZero;
-        }
-
         public void add(Value variable) {
             varArray.add(variable);
         }
@@ -73,130 +115,201 @@ public class Variable extends Value {
             return varArray.size();
         }
 
-        public ArrayList<Value> flatten(){
-            ArrayList<Value> flatten = new ArrayList<>();
-            for(Value variable: varArray){
-                if(variable instanceof VarArray){
-                    flatten.addAll(((VarArray) variable).flatten());
-                }else{
-                    flatten.add(variable);
-                }
-            }
-            return flatten;
-        }
-
         public ArrayList<Value> getvarArray() {
             return varArray;
         }
+    }
+
+    /**
+     * 数组的初值，按展开后的下标存放
+     * 常量元素存为位模式(浮点数用floatToRawIntBits)，放在按块分配的int数组中，全0的块不分配；
+     * 局部数组中编译期无法求值的元素单独存放；初值中显式给出的下标另外记录，其余元素局部数组不确定、全局数组为0
+     */
+    public static class ArrayInit extends Variable {
+        private static final int CHUNK_BITS = 10;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+        private final Type contextType;
+        private final int length;
+        private final int[][] chunks;
+        private final IntMap<Value> values = new IntMap<>(); // 非常量元素
+        private final BitSet explicit = new BitSet();
+        private int nonZeroCount = 0;
+
+        private ArrayInit(ArrayType type) {
+            super(type);
+            this.contextType = type.getContextType();
+            this.length = type.getFattenSize();
+            this.chunks = new int[(length + CHUNK_SIZE - 1) >>> CHUNK_BITS][];
+        }
+
+        // 只保留常量部分，非常量元素视为0，用于生成只读的常量表；常量数据是共享的，填充完成后不再修改
+        public ArrayInit getConstPart() {
+            ArrayInit ret = new ArrayInit((ArrayType) type);
+            System.arraycopy(chunks, 0, ret.chunks, 0, chunks.length);
+            ret.explicit.or(explicit);
+            ret.nonZeroCount = nonZeroCount;
+            return ret;
+        }
+
+        // 按初值列表逐个写入展开后的下标，处理省略花括号的情况，多余的初值忽略
+        public static ArrayInit of(ArrayType type, VarArray varArray) {
+            ArrayInit ret = new ArrayInit(type);
+            ret.fill(varArray.getvarArray(), 0, type, 0);
+            return ret;
+        }
 
-        public VarArray changeType(ArrayType type) {
-            Variable.VarArray ret = new Variable.VarArray(type);
-            int count = 0;
-            int needSize = type.getSize();
-            for (int i = 0; count < needSize && i < this.getSize(); i++) {
-                Value variable = varArray.get(i);
-                // System.out.println("need " + type.getBasicType());
-                if (varArray.get(i) instanceof Variable.VarArray) {// 数组则放到下一层考虑
-                    // System.out.println("get " + constant);
-                    assert type.getBasicType() instanceof ArrayType;
-                    ((Variable.VarArray) variable).setAddZero(addZero);
-                    ret.add(((Variable.VarArray) variable).changeType((ArrayType) type.getBasicType()));
+        // 从items的第i项开始初始化起始下标为base的type类型子数组，返回用掉之后的下一项
+        private int fill(ArrayList<Value> items, int i, ArrayType type, int base) {
+            Type elemType = type.getBasicType();
+            int elemSize = elemType instanceof ArrayType ? ((ArrayType) elemType).getFattenSize() : 1;
+            for (int k = 0; k < type.getSize() && i < items.size(); k++) {
+                Value item = items.get(i);
+                int index = base + k * elemSize;
+                if (item instanceof VarArray) {// 花括号对应下一个元素
+                    ArrayList<Value> inner = ((VarArray) item).getvarArray();
+                    if (elemType instanceof ArrayType)
+                        fill(inner, 0, (ArrayType) elemType, index);
+                    else if (!inner.isEmpty() && !(inner.get(0) instanceof VarArray))
+                        set(index, inner.get(0));
+                    i++;
+                } else if (elemType instanceof ArrayType) {// 省略了花括号，连续的元素依次填满这个子数组
+                    i = fill(items, i, (ArrayType) elemType, index);
                 } else {
-                    if(!(type.getBasicType() instanceof ArrayType)){//非数组元素直接加入
-                        // System.out.println("get " + constant);
-                        ret.add(variable);
-                        // System.out.println("add " + constant);
-                    } else {// 非基本类型则需要拆分
-                        // System.out.println("else get " + constant);
-                        int size = ((ArrayType) type.getBasicType()).getFattenSize();
-                        Variable.VarArray childArray = new Variable.VarArray(type.getBasicType());
-                        for (int j = 0; j < size // 要加入子数组的元素个数
-                                && i < this.getSize() // 要加入的元素个数不能超过原数组的大小
-//                                && (varArray.get(i) instanceof Variable.ConstInt
-//                                        || varArray.get(i) instanceof Variable.ConstFloat) // 要加入的元素必须是基本类型
-                        ; j++, i++) {
-                            // System.out.println("add " + varArray.get(i));
-                            childArray.add(varArray.get(i));
-                        }
-                        if (i < this.getSize())
-                            i--;// 如果还有剩余则回退一个
-                        else if (i == this.getSize() && childArray.getSize() < size) { // 如果没有剩余但是子数组的元素个数不够
-                            for (int j = childArray.getSize(); j < size; j++) {
-                                if(!addZero)
-                                {
-                                    childArray.add(new Undef(type.getContextType()));
-                                }
-                                else if (type.getContextType() instanceof Int32Type) {
-                                    childArray.add(new Variable.ConstInt(0));
-                                } else {
-                                    assert type.getContextType() instanceof FloatType;
-                                    childArray.add(new Variable.ConstFloat(0));
-                                }
-                                // System.out.println("add 0");
-                            }
-                        }
-                        assert childArray.getSize() == size;
-                        ret.add(childArray.changeType((ArrayType) type.getBasicType()));
-                    }
+                    set(index, item);
+                    i++;
                 }
-                count++;
             }
-            // 如果count < needSize则需要补0
-            while (count < needSize) {
-                if (type.getBasicType() instanceof Int32Type) {
-                    if(!addZero)
-                    {
-                        ret.add(new Undef(type.getContextType()));
-                    } else {
-                        ret.add(new Variable.ConstInt(0));
-                    }
-                    // System.out.println("add 0");
-                } else if (type.getBasicType() instanceof FloatType) {
-                    if(!addZero)
-                    {
-                        ret.add(new Undef(type.getContextType()));
-                    } else {
-                        ret.add(new Variable.ConstFloat(0));
-                    }
-                    // System.out.println("add 0");
-                } else if (type.getBasicType() instanceof ArrayType) {
-                    int size = ((ArrayType) type.getBasicType()).getFattenSize();
-                    Variable.VarArray childArray = new Variable.VarArray(type.getBasicType());
-                    for (int j = 0; j < size; j++) {
-                        if(!addZero)
-                        {
-                            childArray.add(new Undef(type.getContextType()));
-                        } else if (type.getContextType() instanceof Int32Type) {
-                            childArray.add(new Variable.ConstInt(0));
-                        } else {
-                            assert type.getContextType() instanceof FloatType;
-                            childArray.add(new Variable.ConstFloat(0));
-                        }
-                        // System.out.println("add 0");
-                    }
-                    ret.add(childArray.changeType((ArrayType) type.getBasicType()));
+            return i;
+        }
+
+        private void set(int index, Value value) {
+            explicit.set(index);
+            if (value instanceof ConstInt || value instanceof ConstFloat) {
+                int word;
+                if (contextType instanceof FloatType) {
+                    float floatVal = value instanceof ConstInt ? (float) ((ConstInt) value).getIntVal() : ((ConstFloat) value).getFloatVal();
+                    word = Float.floatToRawIntBits(floatVal);
+                } else {
+                    word = value instanceof ConstFloat ? (int) ((ConstFloat) value).getFloatVal() : ((ConstInt) value).getIntVal();
                 }
-                count++;
+                if (word != 0) {
+                    nonZeroCount++;
+                    int[] chunk = chunks[index >>> CHUNK_BITS];
+                    if (chunk == null)
+                        chunk = chunks[index >>> CHUNK_BITS] = new int[CHUNK_SIZE];
+                    chunk[index & (CHUNK_SIZE - 1)] = word;
+                }
+            } else {
+                values.put(index, value);
             }
-            assert count == needSize;
-            return ret;
+        }
+
+        public Type getContextType() {
+            return contextType;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        // 下标不小于index的下一个显式给出初值的元素，没有时返回-1
+        public int nextExplicit(int index) {
+            return explicit.nextSetBit(index);
+        }
+
+        // 非0常量元素的个数
+        public int getNonZeroCount() {
+            return nonZeroCount;
+        }
+
+        // 编译期无法求值的元素个数
+        public int getNonConstCount() {
+            return values.size();
+        }
+
+        public boolean isConst(int index) {
+            return values.get(index) == null;
+        }
+
+        // 常量元素的位模式
+        public int getWord(int index) {
+            int[] chunk = chunks[index >>> CHUNK_BITS];
+            return chunk == null ? 0 : chunk[index & (CHUNK_SIZE - 1)];
+        }
+
+        public Value getValue(int index) {
+            if (!isConst(index))
+                return values.get(index);
+            if (contextType instanceof FloatType)
+                return ConstFloat.get(Float.intBitsToFloat(getWord(index)));
+            return ConstInt.get(getWord(index));
+        }
+
+        // 下标不小于index的下一个非0常量元素，没有时返回length，全0的块整块跳过
+        public int nextNonZero(int index) {
+            while (index < length) {
+                int[] chunk = chunks[index >>> CHUNK_BITS];
+                if (chunk == null) {
+                    index = (index | (CHUNK_SIZE - 1)) + 1;
+                    continue;
+                }
+                if (chunk[index & (CHUNK_SIZE - 1)] != 0)
+                    return index;
+                index++;
+            }
+            return length;
+        }
+
+        public boolean isZero() {
+            return values.size() == 0 && nextNonZero(0) == length;
+        }
+
+        // 按LLVM的嵌套格式输出，全0的子数组输出为zeroinitializer
+        public void output(Emitter emitter) {
+            output(emitter, (ArrayType) type, 0);
+        }
+
+        private void output(Emitter emitter, ArrayType type, int base) {
+            int size = type.getFattenSize();
+            if (values.size() == 0 && nextNonZero(base) >= base + size) {
+                emitter.print("zeroinitializer");
+                return;
+            }
+            Type elemType = type.getBasicType();
+            int elemSize = elemType instanceof ArrayType ? ((ArrayType) elemType).getFattenSize() : 1;
+            emitter.print('[');
+            for (int k = 0; k < type.getSize(); k++) {
+                if (k > 0)
+                    emitter.print(", ");
+                emitter.print(elemType.toString()).print(' ');
+                int index = base + k * elemSize;
+                if (elemType instanceof ArrayType)
+                    output(emitter, (ArrayType) elemType, index);
+                else if (!isConst(index))
+                    emitter.print(values.get(index).getName());
+                else if (contextType instanceof FloatType)
+                    emitter.print(String.format("0x%x", Double.doubleToRawLongBits(Float.intBitsToFloat(getWord(index)))));
+                else
+                    emitter.print(getWord(index));
+            }
+            emitter.print(']');
         }
 
         @Override
         public String toString() {
-            String ret = "[";
-            for (int i = 0; i < varArray.size() - 1; i++) {
-                ret = ret + varArray.get(i).getType() + " " + varArray.get(i).toString() + ", ";
-            }
-            if (varArray.size() > 0)
-                ret += varArray.get(varArray.size() - 1).getType() + " " + varArray.get(varArray.size() - 1).toString() + "]";
-            return ret;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Emitter emitter = new Emitter(out);
+            output(emitter);
+            emitter.flush();
+            return out.toString(StandardCharsets.UTF_8);
         }
     }
 
     public static class Undef extends Variable {
         public Undef(Type type){
             super(type);
+            this.name = "undef";
         }
     }
 
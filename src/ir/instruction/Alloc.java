@@ -8,7 +8,7 @@ import ir.type.Type;
 public class Alloc extends Instr {
 
     public Alloc(Type type, BasicBlock basicBlock) {
-        super(new PointerType(type), basicBlock, true);
+        super(PointerType.get(type), basicBlock, true);
     }
 
     @Override
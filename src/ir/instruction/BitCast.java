@@ -5,16 +5,17 @@ import ir.Value;
 import ir.type.Type;
 
 public class BitCast extends Instr{
-    Value value;
     public BitCast(Value value, Type type, BasicBlock basicBlock) {
         super(type, basicBlock);
-        this.value = value;
         this.addUse(value);
     }
 
+    public Value getValue() {
+        return getUse(0);
+    }
+
     @Override
     public String toString() {
-        return getName() + " = bitcast " + value.getType() + " " + value.getName() + " to " + getType();
+        return getName() + " = bitcast " + getValue().getType() + " " + getValue().getName() + " to " + getType();
     }
 }
-
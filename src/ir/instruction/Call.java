@@ -10,19 +10,22 @@ import java.util.ArrayList;
 
 public class Call extends Instr{
 
-    Function function;
-    ArrayList<Value> params;
-
     public Call(Function function, ArrayList<Value> params, BasicBlock basicBlock) {
         super(function.getType(), basicBlock);
-        this.function = function;
-        this.params = params;
         this.addUse(function);
         for(Value param: params){
             this.addUse(param);
         }
     }
 
+    public Function getFunction() {
+        return (Function) getUse(0);
+    }
+
+    public ArrayList<Value> getParams() {
+        return new ArrayList<>(getUses().subList(1, getUses().size()));
+    }
+
     @Override
     public String toString() {
         String prefix = "";
@@ -31,12 +34,13 @@ public class Call extends Instr{
             prefix = getName() + " = ";
             returnType = type.toString();
         }
-        String params = "";
-        for(int i = 0; i < this.params.size(); i++){
-            params += this.params.get(i).getType() + " " + this.params.get(i).getName();
-            if(i != this.params.size() - 1)
-                params += ", ";
+        ArrayList<Value> params = getParams();
+        String paramStr = "";
+        for(int i = 0; i < params.size(); i++){
+            paramStr += params.get(i).getType() + " " + params.get(i).getName();
+            if(i != params.size() - 1)
+                paramStr += ", ";
         }
-        return prefix + "call " + returnType + " @" + function.getName() + "(" + params + ")";
+        return prefix + "call " + returnType + " @" + getFunction().getName() + "(" + paramStr + ")";
     }
 }
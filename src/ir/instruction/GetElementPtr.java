@@ -10,21 +10,26 @@ import java.util.ArrayList;
 
 public class GetElementPtr extends Instr{
 
-    Value pointer;
-    ArrayList<Value> idxList;
-
     public GetElementPtr(Type type, Value pointer, ArrayList<Value> idxList, BasicBlock basicBlock) {
-        super(new PointerType(type.getContentType()), basicBlock);
-        this.pointer = pointer;
-        this.idxList = idxList;
+        super(PointerType.get(type.getContentType()), basicBlock);
         this.addUse(pointer);
         for(Value idx: idxList){
             this.addUse(idx);
         }
     }
 
+    public Value getPointer() {
+        return getUse(0);
+    }
+
+    public ArrayList<Value> getIdxList() {
+        return new ArrayList<>(getUses().subList(1, getUses().size()));
+    }
+
     @Override
     public String toString() {
+        Value pointer = getPointer();
+        ArrayList<Value> idxList = getIdxList();
         String ret = name + " = getelementptr inbounds " + pointer.getType().getBasicType() + ", " + pointer.getType() + " "
                 + pointer.getName() + ", ";
         for(int i = 0; i < idxList.size(); i++){
@@ -6,24 +6,21 @@ import frontend.semantic.OpTree;
 import ir.BasicBlock;
 
 public class Icmp extends Instr {
-    Value lhs, rhs;
     OpTree.Operator op;
 
     public Icmp(Value lhs, Value rhs, OpTree.Operator op, BasicBlock basicBlock) {
         super(Int1Type.getInstance(), basicBlock);
-        this.lhs = lhs;
-        this.rhs = rhs;
         this.op = op;
         this.addUse(lhs);
         this.addUse(rhs);
     }
 
     public Value getLhs() {
-        return lhs;
+        return getUse(0);
     }
 
     public Value getRhs() {
-        return rhs;
+        return getUse(1);
     }
 
     public OpTree.Operator getOp() {
@@ -32,7 +29,7 @@ public class Icmp extends Instr {
 
     @Override
     public String toString() {
-        return this.getName() + " = icmp " + op + " " + lhs.getType() + " " + lhs.getName() + ", "
-                + rhs.getName();
+        return this.getName() + " = icmp " + op + " " + getLhs().getType() + " " + getLhs().getName() + ", "
+                + getRhs().getName();
     }
 }
@@ -8,25 +8,33 @@ import ir.type.Type;
 import java.util.ArrayList;
 
 public class Instr extends Value {
-    private static int count = 0;
+    private final int id;
     private BasicBlock basicBlock;
-    private ArrayList<Value> uses; // 使用了的value
+    private ArrayList<Value> uses; // 使用了的value，只读，修改需通过setUse/removeUse
+    private ArrayList<Used> usedNodes = new ArrayList<>(); // 与uses一一对应的使用节点
 
     public Instr(Type type, BasicBlock basicBlock) {
         this.type = type;
         this.basicBlock = basicBlock;
-        this.name = "%r" + count++;
+        this.id = basicBlock.getFunction().nextInstrId();
+        this.name = "%r" + id;
         this.uses = new ArrayList<>();
         basicBlock.addInstr(this);
     }
 
-    public Instr(Type type, BasicBlock basicBlock, boolean head) {
+    // inEntry为true时插入到函数入口块的开头(alloca)，否则插入到basicBlock的开头(phi)
+    public Instr(Type type, BasicBlock basicBlock, boolean inEntry) {
         this.type = type;
-        this.basicBlock = basicBlock;
-        this.name = "%r" + count++;
+        this.id = basicBlock.getFunction().nextInstrId();
+        this.name = "%r" + id;
         this.uses = new ArrayList<>();
 //        basicBlock.addInstrHead(this);
-        basicBlock.getFunction().getBasicBlocks().get(0).addInstrHead(this);
+        if(inEntry){
+            this.basicBlock = basicBlock.getFunction().getEntry();
+        } else {
+            this.basicBlock = basicBlock;
+        }
+        this.basicBlock.addInstrHead(this);
     }
 
     public ArrayList<Value> getUses() {
@@ -38,12 +46,83 @@ public class Instr extends Value {
     }
 
     public void addUse(Value value){
+        Used used = new Used(this, value, uses.size());
         uses.add(value);
-        value.addUsed(new Used(this, value));
+        usedNodes.add(used);
+        value.addUsed(used);
+    }
+
+    // 将第i个操作数替换为value，直接把使用节点从旧value移到新value上
+    public void setUse(int i, Value value){
+        Value old = uses.get(i);
+        if(old == value)
+            return;
+        Used used = usedNodes.get(i);
+        old.removeUsed(used);
+        used.setValue(value);
+        uses.set(i, value);
+        value.addUsed(used);
+    }
+
+    // 删除第i个操作数，之后的操作数下标前移
+    public void removeUse(int i){
+        Used used = usedNodes.remove(i);
+        uses.remove(i);
+        used.getValue().removeUsed(used);
+        for(int j = i; j < usedNodes.size(); j++){
+            usedNodes.get(j).setIdx(j);
+        }
+    }
+
+    // 将当前指令中对oldValue的使用全部替换为newValue
+    public void replaceUse(Value oldValue, Value newValue){
+        for(int i = 0; i < uses.size(); i++){
+            if(uses.get(i) == oldValue){
+                setUse(i, newValue);
+            }
+        }
+    }
+
+    // 清除当前指令对其他value的使用
+    public void dropAllUses(){
+        for(Used used: usedNodes){
+            used.getValue().removeUsed(used);
+        }
+        usedNodes.clear();
+        uses.clear();
+    }
+
+    // 从基本块中删除当前指令，并清除其对其他value的使用
+    public void remove(){
+        basicBlock.getInstrs().remove(this);
+        dropAllUses();
     }
 
-    public static int getCount() {
-        return count++;
+    // 将当前指令移动到pos之前，保留其使用关系
+    public void moveBefore(Instr pos){
+        basicBlock = pos.getBasicBlock();
+        basicBlock.getInstrs().moveBefore(pos, this);
+    }
+
+    // 将当前指令移动到block的末尾，保留其使用关系
+    public void moveToEnd(BasicBlock block){
+        basicBlock = block;
+        block.getInstrs().moveToTail(this);
+    }
+
+    public boolean isTerminator(){
+        return this instanceof Jump || this instanceof Branch || this instanceof Return;
+    }
+
+    // 与BasicBlock相同，用创建顺序作为哈希值使输出稳定
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public int getIndex() {
+        return id;
     }
 
     public BasicBlock getBasicBlock() {
@@ -7,16 +7,17 @@ import ir.type.Type;
 
 public class Load extends Instr{
 
-    Value pointer;
-
     public Load(Value pointer, BasicBlock basicBlock) {
         super(((PointerType)(pointer.getType())).getBasicType(), basicBlock);
-        this.pointer = pointer;
         this.addUse(pointer);
     }
 
+    public Value getPointer() {
+        return getUse(0);
+    }
+
     @Override
     public String toString() {
-        return name + " = load " + type + ", " + pointer.getType() + " " + pointer.getName();
+        return name + " = load " + type + ", " + getPointer().getType() + " " + getPointer().getName();
     }
 }
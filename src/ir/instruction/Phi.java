@@ -0,0 +1,59 @@
+package ir.instruction;
+
+import ir.BasicBlock;
+import ir.Value;
+import ir.type.Type;
+
+import java.util.ArrayList;
+
+// phi指令，uses中的第i个value来自incomingBlocks中的第i个前驱块
+public class Phi extends Instr {
+
+    private final ArrayList<BasicBlock> incomingBlocks = new ArrayList<>();
+
+    public Phi(Type type, BasicBlock basicBlock) {
+        super(type, basicBlock, false);
+    }
+
+    public void addIncoming(Value value, BasicBlock block) {
+        this.addUse(value);
+        incomingBlocks.add(block);
+    }
+
+    public void removeIncoming(BasicBlock block) {
+        int idx = incomingBlocks.indexOf(block);
+        if (idx < 0) {
+            return;
+        }
+        removeUse(idx);
+        incomingBlocks.remove(idx);
+    }
+
+    public void setIncomingBlock(int idx, BasicBlock block) {
+        incomingBlocks.set(idx, block);
+    }
+
+    public ArrayList<BasicBlock> getIncomingBlocks() {
+        return incomingBlocks;
+    }
+
+    public Value getIncomingValue(BasicBlock block) {
+        int idx = incomingBlocks.indexOf(block);
+        if (idx < 0) {
+            return null;
+        }
+        return getUse(idx);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(getName()).append(" = phi ").append(getType()).append(" ");
+        for (int i = 0; i < incomingBlocks.size(); i++) {
+            sb.append("[ ").append(getUse(i).getName()).append(", %").append(incomingBlocks.get(i).getName()).append(" ]");
+            if (i != incomingBlocks.size() - 1)
+                sb.append(", ");
+        }
+        return sb.toString();
+    }
+}
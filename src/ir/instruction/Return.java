@@ -6,7 +6,6 @@ import ir.type.Type;
 import ir.type.VoidType;
 
 public class Return extends Instr {
-    private Value returnValue;
 
     public Return(BasicBlock basicBlock) {
         super(VoidType.getInstance(), basicBlock);
@@ -14,16 +13,22 @@ public class Return extends Instr {
 
     public Return(Value returnValue, BasicBlock basicBlock) {
         super(returnValue.getType(), basicBlock);
-        this.returnValue = returnValue;
         this.addUse(returnValue);
     }
 
+    public Value getReturnValue() {
+        if (getUses().isEmpty()) {
+            return null;
+        }
+        return getUse(0);
+    }
+
     @Override
     public String toString() {
-        if (returnValue == null) {
+        if (getReturnValue() == null) {
             return "ret void";
         } else {
-            return "ret " + returnValue.getType() + " " + returnValue.getName();
+            return "ret " + getReturnValue().getType() + " " + getReturnValue().getName();
         }
     }
 }
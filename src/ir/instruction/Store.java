@@ -7,20 +7,23 @@ import ir.type.VoidType;
 
 public class Store extends Instr {
 
-    Value value;
-    Value address;
-
     public Store(Value value, Value address, BasicBlock basicBlock) {
         super(VoidType.getInstance(), basicBlock);
-        this.value = value;
-        this.address = address;
         this.addUse(value);
         this.addUse(address);
     }
 
+    public Value getValue() {
+        return getUse(0);
+    }
+
+    public Value getAddress() {
+        return getUse(1);
+    }
+
     @Override
     public String toString() {
-        return "store " + value.getType().toString() + " " + value.getName() + ", " + address.getType().toString()
-                + " " + address.getName();
+        return "store " + getValue().getType().toString() + " " + getValue().getName() + ", " + getAddress().getType().toString()
+                + " " + getAddress().getName();
     }
 }
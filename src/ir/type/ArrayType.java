@@ -1,13 +1,23 @@
 package ir.type;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 public class ArrayType extends Type{
+    // 与PointerType相同，元素类型和长度相同的数组类型只有一个对象
+    private record Key(Type basicType, int size) {}
+    private static final ConcurrentHashMap<Key, ArrayType> instances = new ConcurrentHashMap<>();
+
     private final int size;
 
-    public ArrayType(Type basicType, int size){
+    private ArrayType(Type basicType, int size){
         this.basicType = basicType;
         this.size = size;
     }
 
+    public static ArrayType get(Type basicType, int size){
+        return instances.computeIfAbsent(new Key(basicType, size), key -> new ArrayType(key.basicType(), key.size()));
+    }
+
     @Override
     public String toString() {
         return "[" + size + " x " + basicType + "]";
@@ -2,13 +2,11 @@ package ir.type;
 
 public class FloatType extends Type{
 
-    private static FloatType instance = null;
+    private static final FloatType instance = new FloatType();
     private FloatType(){
     }
 
     public static FloatType getInstance(){
-        if(instance == null)
-            instance = new FloatType();
         return instance;
     }
 
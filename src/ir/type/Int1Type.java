@@ -1,14 +1,12 @@
 package ir.type;
 
 public class Int1Type extends Type {
-    private static Int1Type instance = null;
+    private static final Int1Type instance = new Int1Type();
 
     private Int1Type() {
     }
 
     public static Int1Type getInstance() {
-        if (instance == null)
-            instance = new Int1Type();
         return instance;
     }
 
@@ -2,13 +2,11 @@ package ir.type;
 
 public class Int32Type extends Type{
 
-    private static Int32Type instance = null;
+    private static final Int32Type instance = new Int32Type();
     private Int32Type(){
     }
 
     public static Int32Type getInstance(){
-        if(instance == null)
-            instance = new Int32Type();
         return instance;
     }
 
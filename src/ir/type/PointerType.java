@@ -1,11 +1,19 @@
 package ir.type;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 public class PointerType extends Type{
+    // 类型是不可变的，所有编译共用；同一元素类型的指针类型只有一个对象，可以用==比较
+    private static final ConcurrentHashMap<Type, PointerType> instances = new ConcurrentHashMap<>();
 
-    public PointerType(Type basicType){
+    private PointerType(Type basicType){
         this.basicType = basicType;
     }
 
+    public static PointerType get(Type basicType){
+        return instances.computeIfAbsent(basicType, PointerType::new);
+    }
+
     @Override
     public String toString() {
         return basicType + "*";
@@ -1,13 +1,11 @@
 package ir.type;
 
 public class VoidType extends Type{
-    private static VoidType instance = null;
+    private static final VoidType instance = new VoidType();
     private VoidType(){
     }
 
     public static VoidType getInstance(){
-        if(instance == null)
-            instance = new VoidType();
         return instance;
     }
 
@@ -1,9 +1,13 @@
 package lir;
 
 import ir.BasicBlock;
+import lir.mcInstr.McBranch;
 import lir.mcInstr.McInstr;
+import lir.mcInstr.McJump;
+import util.Emitter;
 import util.MyList;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -12,6 +16,7 @@ public class McBlock {
     private BasicBlock basicBlock;
     private McFunction mcFunction;
     private Set<McBlock> predMcBlocks = new HashSet<>();
+    private ArrayList<McBlock> succMcBlocks = new ArrayList<>();
 
     public McBlock(BasicBlock basicBlock){
         this.basicBlock = basicBlock;
@@ -21,11 +26,74 @@ public class McBlock {
         mcInstrs.insertTail(mcInstr);
     }
 
+    public MyList<McInstr> getMcInstrs() {
+        return mcInstrs;
+    }
+
     public void addPreMcBlock(McBlock block){
         predMcBlocks.add(block);
     }
 
+    public Set<McBlock> getPredMcBlocks() {
+        return predMcBlocks;
+    }
+
+    public ArrayList<McBlock> getSuccMcBlocks() {
+        return succMcBlocks;
+    }
+
+    // 根据块末尾的跳转指令计算后继
+    public void computeSucc() {
+        succMcBlocks.clear();
+        for (McInstr mcInstr : mcInstrs) {
+            McBlock target = null;
+            if (mcInstr instanceof McJump)
+                target = ((McJump) mcInstr).getTarget();
+            else if (mcInstr instanceof McBranch)
+                target = ((McBranch) mcInstr).getTarget();
+            if (target != null && !succMcBlocks.contains(target))
+                succMcBlocks.add(target);
+        }
+    }
+
+    // 块末尾第一条跳转指令，块间传送指令需要插入到它之前
+    public McInstr getFirstBranch() {
+        McInstr first = null;
+        if (mcInstrs.isEmpty())
+            return null;
+        McInstr cur = mcInstrs.getLast();
+        while (cur instanceof McJump || cur instanceof McBranch) {
+            first = cur;
+            if (cur == mcInstrs.getFirst())
+                break;
+            cur = (McInstr) cur.getPrev();
+        }
+        return first;
+    }
+
     public void setMcFunction(McFunction mcFunction) {
         this.mcFunction = mcFunction;
     }
+
+    public McFunction getMcFunction() {
+        return mcFunction;
+    }
+
+    public BasicBlock getBasicBlock() {
+        return basicBlock;
+    }
+
+    public String getName() {
+        return mcFunction.getName() + "_" + basicBlock.getName();
+    }
+
+    // next为布局上的下一个块，跳转到下一个块的无条件跳转可以省略
+    public void output(Emitter emitter, McBlock next) {
+        emitter.print(getName()).println(":");
+        for (McInstr mcInstr : mcInstrs) {
+            if (mcInstr instanceof McJump && ((McJump) mcInstr).getTarget() == next && mcInstr == mcInstrs.getLast())
+                continue;
+            emitter.print('\t').println(mcInstr.toString());
+        }
+    }
 }
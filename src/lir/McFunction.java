@@ -1,6 +1,10 @@
 package lir;
 
+import backend.CodeGen;
 import ir.Function;
+import lir.mcInstr.McInstr;
+import lir.mcInstr.McLoad;
+import util.Emitter;
 
 import java.util.ArrayList;
 
@@ -11,9 +15,173 @@ public class McFunction {
 
     public ArrayList<Operand> vrList = new ArrayList<>();
     public ArrayList<Operand> svrList = new ArrayList<>();
+    private int vrCount = 0; // 虚拟寄存器在函数内编号
+
+    private ArrayList<McBlock> mcBlocks = new ArrayList<>();
+
+    // 栈帧自sp向上依次为：调用其他函数的栈参数区、alloca区、溢出区，之上为保存的寄存器
+    private int outArgSize = 0;
+    private int allocaSize = 0;
+    private int spillSize = 0;
+    private int stackSize = 0;
+    // 从栈上读取的本函数参数，偏移需要在栈帧确定后加上栈帧大小
+    private ArrayList<McLoad> paramLoads = new ArrayList<>();
+    private ArrayList<Operand.PhyReg> usedCalleeSavedRegs = new ArrayList<>();
+    // 从缓存中取得的汇编文本，不为null时跳过指令选择和寄存器分配
+    private String cachedText;
 
     public McFunction(Function irFunction){
         this.irFunction = irFunction;
         this.name = irFunction.getName();
     }
+
+    public Function getIrFunction() {
+        return irFunction;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCachedText() {
+        return cachedText;
+    }
+
+    public void setCachedText(String cachedText) {
+        this.cachedText = cachedText;
+    }
+
+    public ArrayList<McBlock> getMcBlocks() {
+        return mcBlocks;
+    }
+
+    public void addMcBlock(McBlock mcBlock) {
+        mcBlocks.add(mcBlock);
+    }
+
+    public int nextVrId() {
+        return vrCount++;
+    }
+
+    // 虚拟寄存器编号的上界(不含)，整数和浮点虚拟寄存器共用一套编号
+    public int getVrCount() {
+        return vrCount;
+    }
+
+    public void setOutArgSize(int outArgSize) {
+        this.outArgSize = outArgSize;
+    }
+
+    public int getOutArgSize() {
+        return outArgSize;
+    }
+
+    // 分配alloca空间，返回相对sp的偏移
+    public int allocStack(int size) {
+        int offset = outArgSize + allocaSize;
+        allocaSize += size;
+        return offset;
+    }
+
+    // 分配一个溢出槽，返回相对sp的偏移
+    public int allocSpillSlot() {
+        int offset = outArgSize + allocaSize + spillSize;
+        spillSize += 4;
+        return offset;
+    }
+
+    public void addParamLoad(McLoad mcLoad) {
+        paramLoads.add(mcLoad);
+    }
+
+    public ArrayList<McLoad> getParamLoads() {
+        return paramLoads;
+    }
+
+    public ArrayList<Operand.PhyReg> getUsedCalleeSavedRegs() {
+        return usedCalleeSavedRegs;
+    }
+
+    // 保存寄存器所占空间，lr总是被保存
+    public int getPushSize() {
+        return usedCalleeSavedRegs.size() * 4 + 4;
+    }
+
+    public int getStackSize() {
+        return stackSize;
+    }
+
+    // 在寄存器分配之后确定栈帧大小，保证sp按8字节对齐
+    public void finalizeFrame() {
+        stackSize = outArgSize + allocaSize + spillSize;
+        if ((stackSize + getPushSize()) % 8 != 0)
+            stackSize += 4;
+        for (McLoad mcLoad : paramLoads) {
+            mcLoad.setOffset(mcLoad.getOffset() + stackSize + getPushSize());
+        }
+    }
+
+    // 函数序言：保存寄存器(lr总是保存)，再为栈帧留出空间
+    private String prologue() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\tpush {").append(intRegList()).append("lr}\n");
+        String floatRegs = floatRegRange();
+        if (floatRegs != null)
+            sb.append("\tvpush {").append(floatRegs).append("}\n");
+        if (stackSize > 0)
+            sb.append("\t").append(adjustSp("sub", stackSize)).append("\n");
+        return sb.toString();
+    }
+
+    public String epilogue() {
+        StringBuilder sb = new StringBuilder();
+        if (stackSize > 0)
+            sb.append(adjustSp("add", stackSize)).append("\n\t");
+        String floatRegs = floatRegRange();
+        if (floatRegs != null)
+            sb.append("vpop {").append(floatRegs).append("}\n\t");
+        sb.append("pop {").append(intRegList()).append("pc}");
+        return sb.toString();
+    }
+
+    private String adjustSp(String op, int size) {
+        if (CodeGen.canImmSaved(size))
+            return op + " sp, sp, #" + size;
+        return McInstr.loadImm("r12", size, "") + "\n\t" + op + " sp, sp, r12";
+    }
+
+    private String intRegList() {
+        StringBuilder sb = new StringBuilder();
+        for (Operand.PhyReg reg : usedCalleeSavedRegs) {
+            if (!reg.isFloat())
+                sb.append(reg).append(", ");
+        }
+        return sb.toString();
+    }
+
+    // 保存的浮点寄存器是从s16开始的连续区间
+    private String floatRegRange() {
+        Operand.PhyReg first = null, last = null;
+        for (Operand.PhyReg reg : usedCalleeSavedRegs) {
+            if (reg.isFloat()) {
+                if (first == null)
+                    first = reg;
+                last = reg;
+            }
+        }
+        if (first == null)
+            return null;
+        return first == last ? first.toString() : first + "-" + last;
+    }
+
+    public void output(Emitter emitter) {
+        emitter.println("\t.align 2");
+        emitter.print("\t.global ").println(name);
+        emitter.print("\t.type ").print(name).println(", %function");
+        emitter.print(name).println(":");
+        emitter.print(prologue());
+        for (int i = 0; i < mcBlocks.size(); i++) {
+            mcBlocks.get(i).output(emitter, i + 1 < mcBlocks.size() ? mcBlocks.get(i + 1) : null);
+        }
+    }
 }
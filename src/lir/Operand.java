@@ -7,22 +7,128 @@ public class Operand {
     public enum OperandType{
         imm,    //  立即数
         virtual,    //  虚拟寄存器
+        physical,   //  物理寄存器
+        global,     //  全局变量地址
     }
 
     String pre;
     boolean isFloat = false;
 
+    public boolean isFloat() {
+        return isFloat;
+    }
+
+    public boolean isVirtual() {
+        return this instanceof VirtualReg;
+    }
+
+    public boolean isPhysical() {
+        return this instanceof PhyReg;
+    }
+
+    // 是否需要参与寄存器分配(虚拟寄存器或可分配的物理寄存器)
+    public boolean needsColor() {
+        return this instanceof VirtualReg || (this instanceof PhyReg && ((PhyReg) this).isAllocatable());
+    }
+
     public static class VirtualReg extends Operand{
-        private static int vrCount = 0;
         private int value;
         public VirtualReg(boolean isFloat, McFunction mcFunction){
-            this.value = vrCount++;
+            this.value = mcFunction.nextVrId();
             this.isFloat = isFloat;
             if(isFloat)
                 mcFunction.svrList.add(this);
             else
                 mcFunction.vrList.add(this);
         }
+
+        public int getValue() {
+            return value;
+        }
+
+        // 保证以虚拟寄存器为键的哈希表遍历顺序确定，使输出稳定
+        @Override
+        public int hashCode() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return (isFloat ? "fv" : "v") + value;
+        }
+    }
+
+    // 物理寄存器，整数寄存器r0-r15，浮点寄存器s0-s31，每个寄存器只有一个实例
+    public static class PhyReg extends Operand {
+        public static final int SP = 13, LR = 14, PC = 15;
+        // r12作为汇编输出时的临时寄存器，不参与分配
+        public static final int SCRATCH = 12;
+        private static final PhyReg[] intRegs = new PhyReg[16];
+        private static final PhyReg[] floatRegs = new PhyReg[32];
+
+        static {
+            for (int i = 0; i < intRegs.length; i++) {
+                intRegs[i] = new PhyReg(i, false);
+            }
+            for (int i = 0; i < floatRegs.length; i++) {
+                floatRegs[i] = new PhyReg(i, true);
+            }
+        }
+
+        private final int index;
+
+        private PhyReg(int index, boolean isFloat) {
+            this.index = index;
+            this.isFloat = isFloat;
+        }
+
+        public static PhyReg getIntReg(int index) {
+            return intRegs[index];
+        }
+
+        public static PhyReg getFloatReg(int index) {
+            return floatRegs[index];
+        }
+
+        public static PhyReg sp() {
+            return intRegs[SP];
+        }
+
+        public static PhyReg lr() {
+            return intRegs[LR];
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public int hashCode() {
+            return isFloat ? -32 - index : -1 - index;
+        }
+
+        public boolean isAllocatable() {
+            return isFloat || (index != SCRATCH && index != SP && index != PC);
+        }
+
+        // 调用者保存的寄存器：r0-r3, r12, lr, s0-s15
+        public boolean isCallerSaved() {
+            if (isFloat)
+                return index < 16;
+            return index < 4 || index == SCRATCH || index == LR;
+        }
+
+        @Override
+        public String toString() {
+            if (isFloat)
+                return "s" + index;
+            return switch (index) {
+                case SP -> "sp";
+                case LR -> "lr";
+                case PC -> "pc";
+                default -> "r" + index;
+            };
+        }
     }
 
     public static class Global extends Operand {
@@ -30,6 +136,15 @@ public class Operand {
         public Global(GlobalValue globalValue){
             this.globalValue = globalValue;
         }
+
+        public GlobalValue getGlobalValue() {
+            return globalValue;
+        }
+
+        @Override
+        public String toString() {
+            return globalValue.getName().substring(1);
+        }
     }
 
 
@@ -48,5 +163,18 @@ public class Operand {
             this.floatNumber = floatNumber;
             this.pre = "#";
         }
+
+        public int getIntNumber() {
+            return intNumber;
+        }
+
+        public float getFloatNumber() {
+            return floatNumber;
+        }
+
+        @Override
+        public String toString() {
+            return pre + (isFloat ? Float.toString(floatNumber) : Integer.toString(intNumber));
+        }
     }
 }
@@ -22,10 +22,27 @@ public class MCShift extends McInstr{
         useOperands.add(srcOp2);
     }
 
+    // 作为McBinary第二操作数的移位修饰，不插入到基本块中
     Operand imm;
     public MCShift(ShiftType shiftType, Operand imm) {
-        super(null);
+        super();
         this.type = shiftType;
         this.imm = imm;
     }
+
+    public ShiftType getType() {
+        return type;
+    }
+
+    public Operand getImm() {
+        return imm;
+    }
+
+    @Override
+    public String toString() {
+        Operand dst = defOperands.get(0), src = useOperands.get(0), amount = useOperands.get(1);
+        if (amount instanceof Operand.Imm && ((Operand.Imm) amount).getIntNumber() == 0)
+            return "mov " + dst + ", " + src;
+        return type + " " + dst + ", " + src + ", " + amount;
+    }
 }
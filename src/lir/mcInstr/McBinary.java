@@ -7,6 +7,7 @@ import lir.Operand;
 public class McBinary extends McInstr{
 
     public BinaryType type;
+    private MCShift shift; // 第二个源操作数的移位修饰
     public McBinary(BinaryType binaryType, Operand dst, Operand src1, Operand src2, McBlock mcBlock) {
         super(mcBlock);
         this.type = binaryType;
@@ -21,6 +22,11 @@ public class McBinary extends McInstr{
         defOperands.add(dst);
         useOperands.add(src1);
         useOperands.add(src2);
+        this.shift = shift;
+    }
+
+    public MCShift getShift() {
+        return shift;
     }
 
     public enum BinaryType {
@@ -41,7 +47,8 @@ public class McBinary extends McInstr{
         Or("or"),
         CastInt("castint"), // 隐式转换
         CastFloat("casefloat"),
-        Rsb("rsb")
+        Rsb("rsb"),
+        Smmul("smmul") // 有符号乘法取高32位
         ;
 
         private final String name;
@@ -71,4 +78,42 @@ public class McBinary extends McInstr{
             return name;
         }
     }
+
+    @Override
+    public String toString() {
+        Operand dst = defOperands.get(0), src1 = useOperands.get(0), src2 = useOperands.get(1);
+        if (dst.isFloat()) {
+            return switch (type) {
+                case Add -> "vadd.f32 " + dst + ", " + src1 + ", " + src2;
+                case Sub -> "vsub.f32 " + dst + ", " + src1 + ", " + src2;
+                case Mul -> "vmul.f32 " + dst + ", " + src1 + ", " + src2;
+                case Div -> "vdiv.f32 " + dst + ", " + src1 + ", " + src2;
+                case Neg -> "vneg.f32 " + dst + ", " + src1;
+                default -> throw new AssertionError("Bad float McBinary " + type);
+            };
+        }
+        String op = switch (type) {
+            case Add -> "add";
+            case Sub -> "sub";
+            case Rsb -> "rsb";
+            case And -> "and";
+            case Or -> "orr";
+            case Mul -> "mul";
+            case Div -> "sdiv";
+            case Smmul -> "smmul";
+            default -> throw new AssertionError("Bad int McBinary " + type);
+        };
+        StringBuilder prefix = new StringBuilder();
+        if (src1 instanceof Operand.Imm) {
+            prefix.append(loadImm(SCRATCH, ((Operand.Imm) src1).getIntNumber(), "")).append("\n\t");
+            src1 = Operand.PhyReg.getIntReg(Operand.PhyReg.SCRATCH);
+        }
+        // 乘除法只接受寄存器操作数
+        if (type == BinaryType.Mul || type == BinaryType.Div || type == BinaryType.Smmul)
+            return prefix + op + " " + dst + ", " + src1 + ", " + src2;
+        String op2 = operand2(src2, prefix);
+        if (shift != null)
+            op2 += ", " + shift.getType() + " " + shift.getImm();
+        return prefix + op + " " + dst + ", " + src1 + ", " + op2;
+    }
 }
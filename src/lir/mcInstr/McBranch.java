@@ -0,0 +1,28 @@
+package lir.mcInstr;
+
+import lir.McBlock;
+
+// 根据标志位的条件跳转
+public class McBranch extends McInstr {
+    private McCmp.Cond cond;
+    private McBlock target;
+
+    public McBranch(McCmp.Cond cond, McBlock target, McBlock mcBlock) {
+        super(mcBlock);
+        this.cond = cond;
+        this.target = target;
+    }
+
+    public McCmp.Cond getCond() {
+        return cond;
+    }
+
+    public McBlock getTarget() {
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return "b" + cond + " " + target.getName();
+    }
+}
@@ -0,0 +1,35 @@
+package lir.mcInstr;
+
+import lir.McBlock;
+import lir.McFunction;
+import lir.Operand;
+
+import java.util.ArrayList;
+
+// 函数调用，参数寄存器作为use，所有调用者保存的寄存器作为def
+public class McCall extends McInstr {
+    private McFunction callee;
+
+    public McCall(McFunction callee, ArrayList<Operand> argRegs, McBlock mcBlock) {
+        super(mcBlock);
+        this.callee = callee;
+        useOperands.addAll(argRegs);
+        for (int i = 0; i < 16; i++) {
+            Operand.PhyReg reg = Operand.PhyReg.getIntReg(i);
+            if (reg.isCallerSaved() && reg.isAllocatable())
+                defOperands.add(reg);
+        }
+        for (int i = 0; i < 16; i++) {
+            defOperands.add(Operand.PhyReg.getFloatReg(i));
+        }
+    }
+
+    public McFunction getCallee() {
+        return callee;
+    }
+
+    @Override
+    public String toString() {
+        return "bl " + callee.getName();
+    }
+}
@@ -1,10 +1,26 @@
 package lir.mcInstr;
 
+import backend.CodeGen;
 import lir.McBlock;
+import lir.Operand;
 
 public class McCmp extends McInstr {
-    public McCmp(McBlock mcBlock) {
+    public McCmp(Operand lhs, Operand rhs, McBlock mcBlock) {
         super(mcBlock);
+        useOperands.add(lhs);
+        useOperands.add(rhs);
+    }
+
+    public Operand getLhs() {
+        return useOperands.get(0);
+    }
+
+    public Operand getRhs() {
+        return useOperands.get(1);
+    }
+
+    public boolean isFloat() {
+        return getLhs().isFloat();
     }
 
     // https://developer.arm.com/documentation/dui0489/i/arm-and-thumb-instructions/condition-codes?lang=en
@@ -17,6 +33,8 @@ public class McCmp extends McInstr {
         Le("le"),
         Hi("hi"), // >
         Pl("pl"),
+        Mi("mi"), // 浮点比较的小于
+        Ls("ls"), // 浮点比较的小于等于
         ;
 
         String name;
@@ -29,4 +47,19 @@ public class McCmp extends McInstr {
             return name;
         }
     }
+
+    @Override
+    public String toString() {
+        Operand lhs = getLhs(), rhs = getRhs();
+        if (isFloat())
+            return "vcmp.f32 " + lhs + ", " + rhs + "\n\tvmrs APSR_nzcv, FPSCR";
+        if (rhs instanceof Operand.Imm) {
+            int imm = ((Operand.Imm) rhs).getIntNumber();
+            if (!CodeGen.canImmSaved(imm) && CodeGen.canImmSaved(-imm))
+                return "cmn " + lhs + ", #" + -imm;
+        }
+        StringBuilder prefix = new StringBuilder();
+        String op2 = operand2(rhs, prefix);
+        return prefix + "cmp " + lhs + ", " + op2;
+    }
 }
@@ -0,0 +1,26 @@
+package lir.mcInstr;
+
+import lir.McBlock;
+import lir.Operand;
+
+// vcvt，源和目的都是浮点寄存器，整数与浮点寄存器之间的传送由McMove完成
+public class McConvert extends McInstr {
+    private boolean toFloat;
+
+    public McConvert(Operand dst, Operand src, boolean toFloat, McBlock mcBlock) {
+        super(mcBlock);
+        this.toFloat = toFloat;
+        defOperands.add(dst);
+        useOperands.add(src);
+    }
+
+    public boolean isToFloat() {
+        return toFloat;
+    }
+
+    @Override
+    public String toString() {
+        String dst = defOperands.get(0).toString(), src = useOperands.get(0).toString();
+        return (toFloat ? "vcvt.f32.s32 " : "vcvt.s32.f32 ") + dst + ", " + src;
+    }
+}
@@ -1,5 +1,6 @@
 package lir.mcInstr;
 
+import backend.CodeGen;
 import lir.McBlock;
 import lir.Operand;
 import util.MyNode;
@@ -7,6 +8,9 @@ import util.MyNode;
 import java.util.ArrayList;
 
 public class McInstr extends MyNode {
+    // 输出汇编时放置无法编码的立即数和偏移的临时寄存器，不参与寄存器分配
+    protected static final String SCRATCH = "r12";
+
     public ArrayList<Operand> defOperands = new ArrayList<>();
     public ArrayList<Operand> useOperands = new ArrayList<>();
 
@@ -16,4 +20,74 @@ public class McInstr extends MyNode {
         this.mcBlock = mcBlock;
         mcBlock.addInstr(this);
     }
+
+    // 不插入任何块，由调用者通过insertBefore/insertAfter决定位置
+    public McInstr(){
+    }
+
+    public McBlock getMcBlock() {
+        return mcBlock;
+    }
+
+    public void insertBefore(McInstr pos){
+        this.mcBlock = pos.getMcBlock();
+        mcBlock.getMcInstrs().insertBefore(pos, this);
+    }
+
+    public void insertAfter(McInstr pos){
+        this.mcBlock = pos.getMcBlock();
+        mcBlock.getMcInstrs().insertAfter(pos, this);
+    }
+
+    public void remove(){
+        mcBlock.getMcInstrs().remove(this);
+    }
+
+    public void replaceDef(Operand oldOpd, Operand newOpd){
+        for(int i = 0; i < defOperands.size(); i++){
+            if(defOperands.get(i) == oldOpd)
+                defOperands.set(i, newOpd);
+        }
+    }
+
+    public void replaceUse(Operand oldOpd, Operand newOpd){
+        for(int i = 0; i < useOperands.size(); i++){
+            if(useOperands.get(i) == oldOpd)
+                useOperands.set(i, newOpd);
+        }
+    }
+
+    // 把32位立即数放入reg，无法用mov/mvn编码时使用movw/movt
+    public static String loadImm(String reg, int imm, String cond) {
+        if (CodeGen.canImmSaved(imm))
+            return "mov" + cond + " " + reg + ", #" + imm;
+        if (CodeGen.canImmSaved(~imm))
+            return "mvn" + cond + " " + reg + ", #" + ~imm;
+        String ret = "movw" + cond + " " + reg + ", #" + (imm & 0xffff);
+        if ((imm >>> 16) != 0)
+            ret += "\n\tmovt" + cond + " " + reg + ", #" + (imm >>> 16);
+        return ret;
+    }
+
+    // 寄存器或可编码的立即数，作为数据处理指令的第二操作数，立即数无法编码时先放入r12
+    protected static String operand2(Operand opd, StringBuilder prefix) {
+        if (!(opd instanceof Operand.Imm))
+            return opd.toString();
+        int imm = ((Operand.Imm) opd).getIntNumber();
+        if (CodeGen.canImmSaved(imm))
+            return "#" + imm;
+        prefix.append(loadImm(SCRATCH, imm, "")).append("\n\t");
+        return SCRATCH;
+    }
+
+    // ldr/str/vldr/vstr，偏移超出编码范围时借助r12
+    protected static String memAccess(String op, Operand reg, Operand base, int offset) {
+        int limit = reg.isFloat() ? 1020 : 4095;
+        if (offset >= -limit && offset <= limit && (!reg.isFloat() || offset % 4 == 0))
+            return op + " " + reg + ", [" + base + (offset == 0 ? "" : ", #" + offset) + "]";
+        if (!reg.isFloat())
+            return loadImm(SCRATCH, offset, "") + "\n\t" + op + " " + reg + ", [" + base + ", " + SCRATCH + "]";
+        return loadImm(SCRATCH, offset, "") + "\n\tadd " + SCRATCH + ", " + base + ", " + SCRATCH
+                + "\n\t" + op + " " + reg + ", [" + SCRATCH + "]";
+    }
 }
@@ -0,0 +1,21 @@
+package lir.mcInstr;
+
+import lir.McBlock;
+
+public class McJump extends McInstr {
+    private McBlock target;
+
+    public McJump(McBlock target, McBlock mcBlock) {
+        super(mcBlock);
+        this.target = target;
+    }
+
+    public McBlock getTarget() {
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return "b " + target.getName();
+    }
+}
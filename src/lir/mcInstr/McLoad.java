@@ -0,0 +1,44 @@
+package lir.mcInstr;
+
+import lir.McBlock;
+import lir.Operand;
+
+// ldr/vldr dst, [base, #offset]
+public class McLoad extends McInstr {
+    private int offset;
+
+    public McLoad(Operand dst, Operand base, int offset, McBlock mcBlock) {
+        super(mcBlock);
+        this.offset = offset;
+        defOperands.add(dst);
+        useOperands.add(base);
+    }
+
+    public McLoad(Operand dst, Operand base, int offset) {
+        super();
+        this.offset = offset;
+        defOperands.add(dst);
+        useOperands.add(base);
+    }
+
+    public Operand getDst() {
+        return defOperands.get(0);
+    }
+
+    public Operand getBase() {
+        return useOperands.get(0);
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    @Override
+    public String toString() {
+        return memAccess(getDst().isFloat() ? "vldr" : "ldr", getDst(), getBase(), offset);
+    }
+}
@@ -7,9 +7,76 @@ import java.util.ArrayList;
 
 public class McMove extends McInstr{
 
+    // 条件传送，为null时无条件执行
+    private McCmp.Cond cond;
+
     public McMove(Operand dstOp, Operand srcOp, McBlock mcBlock) {
         super(mcBlock);
         defOperands.add(dstOp);
         useOperands.add(srcOp);
     }
+
+    public McMove(Operand dstOp, Operand srcOp) {
+        super();
+        defOperands.add(dstOp);
+        useOperands.add(srcOp);
+    }
+
+    // 条件传送不一定写入dst，因此dst同时也是被使用的
+    public McMove(Operand dstOp, Operand srcOp, McCmp.Cond cond, McBlock mcBlock) {
+        super(mcBlock);
+        this.cond = cond;
+        defOperands.add(dstOp);
+        useOperands.add(srcOp);
+        useOperands.add(dstOp);
+    }
+
+    public Operand getDst() {
+        return defOperands.get(0);
+    }
+
+    public Operand getSrc() {
+        return useOperands.get(0);
+    }
+
+    public McCmp.Cond getCond() {
+        return cond;
+    }
+
+    // 同类寄存器之间的无条件传送，可以被合并
+    public boolean isCopy() {
+        return cond == null && getDst().needsColor() && getSrc().needsColor()
+                && getDst().isFloat() == getSrc().isFloat();
+    }
+
+    @Override
+    public String toString() {
+        Operand dst = getDst(), src = getSrc();
+        String c = cond == null ? "" : cond.toString();
+        if (src instanceof Operand.Global) {
+            return "movw" + c + " " + dst + ", #:lower16:" + src + "\n\tmovt" + c + " " + dst + ", #:upper16:" + src;
+        }
+        if (src instanceof Operand.Imm) {
+            if (!dst.isFloat())
+                return loadImm(dst.toString(), ((Operand.Imm) src).getIntNumber(), c);
+            float val = ((Operand.Imm) src).getFloatNumber();
+            if (isVfpImm(val))
+                return "vmov" + c + ".f32 " + dst + ", #" + val;
+            return loadImm(SCRATCH, Float.floatToRawIntBits(val), c) + "\n\tvmov" + c + " " + dst + ", " + SCRATCH;
+        }
+        if (dst.isFloat() && src.isFloat())
+            return "vmov" + c + ".f32 " + dst + ", " + src;
+        if (dst.isFloat() || src.isFloat())
+            return "vmov" + c + " " + dst + ", " + src;
+        return "mov" + c + " " + dst + ", " + src;
+    }
+
+    // vmov.f32可以直接编码的浮点立即数：±(16~31)/16 * 2^(-3~4)
+    private static boolean isVfpImm(float val) {
+        int bits = Float.floatToRawIntBits(val);
+        if ((bits & 0x7ffff) != 0)
+            return false;
+        int exp = (bits >>> 25) & 0x3f;
+        return exp == 0x20 || exp == 0x1f;
+    }
 }
@@ -0,0 +1,19 @@
+package lir.mcInstr;
+
+import lir.McBlock;
+import lir.Operand;
+
+// 函数返回，返回值已放入r0或s0
+public class McReturn extends McInstr {
+    public McReturn(Operand retReg, McBlock mcBlock) {
+        super(mcBlock);
+        if (retReg != null)
+            useOperands.add(retReg);
+    }
+
+    // 函数尾声：释放栈帧，恢复保存的寄存器，保存的lr直接弹出到pc
+    @Override
+    public String toString() {
+        return getMcBlock().getMcFunction().epilogue();
+    }
+}
@@ -0,0 +1,40 @@
+package lir.mcInstr;
+
+import lir.McBlock;
+import lir.Operand;
+
+// str/vstr src, [base, #offset]
+public class McStore extends McInstr {
+    private int offset;
+
+    public McStore(Operand src, Operand base, int offset, McBlock mcBlock) {
+        super(mcBlock);
+        this.offset = offset;
+        useOperands.add(src);
+        useOperands.add(base);
+    }
+
+    public McStore(Operand src, Operand base, int offset) {
+        super();
+        this.offset = offset;
+        useOperands.add(src);
+        useOperands.add(base);
+    }
+
+    public Operand getSrc() {
+        return useOperands.get(0);
+    }
+
+    public Operand getBase() {
+        return useOperands.get(1);
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String toString() {
+        return memAccess(getSrc().isFloat() ? "vstr" : "str", getSrc(), getBase(), offset);
+    }
+}
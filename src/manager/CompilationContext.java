@@ -0,0 +1,133 @@
+package manager;
+
+import backend.CodeGen;
+import backend.RegAllocate;
+import frontend.parser.Visitor;
+import util.Arg;
+import util.Emitter;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * 一次编译的全部状态：命令行选项、函数和全局变量表、各阶段的对象和输出缓冲区
+ * 不同的上下文之间不共享任何可变状态，多个编译可以在不同线程上同时进行
+ * 编译流程中的各阶段由上下文创建并持有，IR节点的构造函数等深处的代码通过current()取得所在线程正在编译的上下文
+ */
+public class CompilationContext {
+    private static final ThreadLocal<CompilationContext> current = new ThreadLocal<>();
+
+    private final Arg arg;
+    private final Manager manager;
+    private final Visitor visitor;
+    private final CodeGen codeGen;
+    private final RegAllocate regAllocate;
+    private final Emitter emitter = new Emitter();
+    private final TimeReport timeReport; // 未指定-time-report时为null
+    private final OutputCache cache; // 未指定-cache时为null
+
+    // -threads=N指定线程数时使用的线程池，第一次并行时创建
+    private ForkJoinPool pool;
+
+    public CompilationContext(Arg arg) {
+        this.arg = arg;
+        this.manager = new Manager(this);
+        this.visitor = new Visitor(manager);
+        this.codeGen = new CodeGen(manager);
+        this.regAllocate = new RegAllocate(codeGen.getMcFunctions(), arg.opt);
+        this.timeReport = arg.timeReport == null ? null : new TimeReport(this);
+        this.cache = arg.cacheDir == null ? null : new OutputCache(arg);
+    }
+
+    public static CompilationContext current() {
+        CompilationContext context = current.get();
+        assert context != null : "no compilation context bound to " + Thread.currentThread().getName();
+        return context;
+    }
+
+    // 在当前线程上以该上下文执行task，结束后恢复原来的上下文
+    public void run(Runnable task) {
+        CompilationContext saved = current.get();
+        current.set(this);
+        try {
+            task.run();
+        } finally {
+            if (saved == null)
+                current.remove();
+            else
+                current.set(saved);
+        }
+    }
+
+    public Arg getArg() {
+        return arg;
+    }
+
+    public Manager getManager() {
+        return manager;
+    }
+
+    public Visitor getVisitor() {
+        return visitor;
+    }
+
+    public CodeGen getCodeGen() {
+        return codeGen;
+    }
+
+    public RegAllocate getRegAllocate() {
+        return regAllocate;
+    }
+
+    public TimeReport getTimeReport() {
+        return timeReport;
+    }
+
+    public OutputCache getCache() {
+        return cache;
+    }
+
+    // 执行编译的一个阶段，指定了-time-report时记录其耗时和前后的IR规模
+    public void stage(String name, Runnable stage) {
+        if (timeReport == null)
+            stage.run();
+        else
+            timeReport.measure(name, stage);
+    }
+
+    public Emitter getEmitter(OutputStream out) {
+        emitter.open(out);
+        return emitter;
+    }
+
+    /**
+     * 对items中的每一项执行task，各项互不依赖，在线程池上并行执行，全部完成后返回
+     * 任务执行时同样绑定本上下文，调用者按items的顺序合并结果，因此输出与执行顺序无关
+     */
+    public <T> void parallelForEach(List<T> items, Consumer<T> task) {
+        if (arg.threads == 1 || items.size() <= 1) {
+            items.forEach(task);
+            return;
+        }
+        if (pool == null)
+            pool = arg.threads == 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(arg.threads);
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (T item : items) {
+            tasks.add(pool.submit(() -> run(() -> task.accept(item))));
+        }
+        for (ForkJoinTask<?> forkJoinTask : tasks) {
+            forkJoinTask.join();
+        }
+    }
+
+    // 编译结束后释放自己创建的线程池
+    public void close() {
+        if (pool != null && pool != ForkJoinPool.commonPool())
+            pool.shutdown();
+        pool = null;
+    }
+}
@@ -3,53 +3,65 @@ package manager;
 import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
+import ir.ConstantPool;
 import ir.Function;
 import ir.GlobalValue;
 import ir.type.FloatType;
 import ir.type.Int32Type;
 import ir.type.PointerType;
 import ir.type.VoidType;
-import util.OutputHandler;
+import lir.McFunction;
+import util.Emitter;
 
 public class Manager {
-    private static final HashMap<String, Function> functions = new HashMap<>();
-    private static final HashMap<String, Function> externalFunctions = new HashMap<>();
-    private static final ArrayList<GlobalValue> globals = new ArrayList<>();
-    private static final Manager manager = new Manager();
-
+    private final CompilationContext context;
+    // 函数表按加入的顺序遍历：运行时库函数在前，之后是源文件中定义的顺序，输出的顺序因此确定，
+    // 增删一个函数不会打乱其他函数在输出中的位置
+    private final HashMap<String, Function> functions = new LinkedHashMap<>();
+    private final HashMap<String, Function> externalFunctions = new LinkedHashMap<>();
+    private final ArrayList<GlobalValue> globals = new ArrayList<>();
+    private final ConstantPool constants = new ConstantPool();
+    public final ExternFunction externs = new ExternFunction();
+
+    // 运行时库函数，每次编译各有一份，调用记录不会在并行的编译之间共享
     public static class ExternFunction {
-        public static final Function GET_INT = new Function( "getint", new ArrayList<>(), Int32Type.getInstance());
-        public static final Function GET_CH = new Function( "getch", new ArrayList<>(), Int32Type.getInstance());
-        public static final Function GET_FLOAT = new Function( "getfloat", new ArrayList<>(), FloatType.getInstance());
-        public static final Function GET_ARR = new Function("getarray", Function.packParamTypes(new PointerType(Int32Type.getInstance())), Int32Type.getInstance());
-        public static final Function GET_FARR = new Function("getfarray", Function.packParamTypes(new PointerType(FloatType.getInstance())), Int32Type.getInstance());
-        public static final Function PUT_INT = new Function("putint", Function.packParamTypes(Int32Type.getInstance()), VoidType.getInstance());
-        public static final Function PUT_CH = new Function("putch", Function.packParamTypes(Int32Type.getInstance()), VoidType.getInstance());
-        public static final Function PUT_FLOAT = new Function("putfloat", Function.packParamTypes(FloatType.getInstance()), VoidType.getInstance());
-        public static final Function PUT_ARR = new Function("putarray",Function.packParamTypes(Int32Type.getInstance(),new PointerType(Int32Type.getInstance())),VoidType.getInstance());
-        public static final Function PUT_FARR = new Function("putfarray", Function.packParamTypes(Int32Type.getInstance(), new PointerType(FloatType.getInstance())), VoidType.getInstance());
-        public static final Function MEM_SET = new Function("memset", Function.packParamTypes(new PointerType(Int32Type.getInstance()), Int32Type.getInstance(), Int32Type.getInstance()), VoidType.getInstance());
-        public static final Function START_TIME = new Function( "starttime", Function.packParamTypes(Int32Type.getInstance()), VoidType.getInstance());
-        public static final Function STOP_TIME = new Function("stoptime", Function.packParamTypes(Int32Type.getInstance()), VoidType.getInstance());
-        public static final Function PARALLEL_START = new Function("parallel_start", new ArrayList<>(), Int32Type.getInstance());
-        public static final Function PARALLEL_END = new Function("parallel_end", Function.packParamTypes(Int32Type.getInstance()), VoidType.getInstance());
+        public final Function GET_INT = new Function( "getint", new ArrayList<>(), Int32Type.getInstance());
+        public final Function GET_CH = new Function( "getch", new ArrayList<>(), Int32Type.getInstance());
+        public final Function GET_FLOAT = new Function( "getfloat", new ArrayList<>(), FloatType.getInstance());
+        public final Function GET_ARR = new Function("getarray", Function.packParamTypes(PointerType.get(Int32Type.getInstance())), Int32Type.getInstance());
+        public final Function GET_FARR = new Function("getfarray", Function.packParamTypes(PointerType.get(FloatType.getInstance())), Int32Type.getInstance());
+        public final Function PUT_INT = new Function("putint", Function.packParamTypes(Int32Type.getInstance()), VoidType.getInstance());
+        public final Function PUT_CH = new Function("putch", Function.packParamTypes(Int32Type.getInstance()), VoidType.getInstance());
+        public final Function PUT_FLOAT = new Function("putfloat", Function.packParamTypes(FloatType.getInstance()), VoidType.getInstance());
+        public final Function PUT_ARR = new Function("putarray",Function.packParamTypes(Int32Type.getInstance(),PointerType.get(Int32Type.getInstance())),VoidType.getInstance());
+        public final Function PUT_FARR = new Function("putfarray", Function.packParamTypes(Int32Type.getInstance(), PointerType.get(FloatType.getInstance())), VoidType.getInstance());
+        public final Function MEM_SET = new Function("memset", Function.packParamTypes(PointerType.get(Int32Type.getInstance()), Int32Type.getInstance(), Int32Type.getInstance()), VoidType.getInstance());
+        public final Function MEM_CPY = new Function("memcpy", Function.packParamTypes(PointerType.get(Int32Type.getInstance()), PointerType.get(Int32Type.getInstance()), Int32Type.getInstance()), VoidType.getInstance());
+        public final Function START_TIME = new Function( "starttime", Function.packParamTypes(Int32Type.getInstance()), VoidType.getInstance());
+        public final Function STOP_TIME = new Function("stoptime", Function.packParamTypes(Int32Type.getInstance()), VoidType.getInstance());
+        public final Function PARALLEL_START = new Function("parallel_start", new ArrayList<>(), Int32Type.getInstance());
+        public final Function PARALLEL_END = new Function("parallel_end", Function.packParamTypes(Int32Type.getInstance()), VoidType.getInstance());
     }
 
-    private Manager() {
+    Manager(CompilationContext context) {
+        this.context = context;
         addExternalFunctions();
     }
 
-    public static ArrayList<GlobalValue> getGlobals() {
-        return globals;
+    public ConstantPool getConstants() {
+        return constants;
     }
 
-    public static Manager getManager() {
-        return manager;
+    public ArrayList<GlobalValue> getGlobals() {
+        return globals;
     }
 
-    public static HashMap<String, Function> getExternalFunctions() {
+    public HashMap<String, Function> getExternalFunctions() {
         return externalFunctions;
     }
 
@@ -57,31 +69,20 @@ public class Manager {
         functions.put(function.getName(), function);
     }
 
+    // getDeclaredFields不保证返回的顺序，按函数名排序后加入
     private void addExternalFunctions() {
-        for (Field field : ExternFunction.class.getDeclaredFields()) {
+        Field[] fields = ExternFunction.class.getDeclaredFields();
+        Arrays.sort(fields, Comparator.comparing(Field::getName));
+        for (Field field : fields) {
             try {
-                Function function = (Function) field.get(ExternFunction.class);
+                Function function = (Function) field.get(externs);
+                function.setExternal();
                 externalFunctions.put(function.getName(), function);
             } catch (IllegalAccessException e) {
                 e.printStackTrace();
             }
         }
         functions.putAll(externalFunctions);
-        // externalFunctions.put(ExternFunction.GET_INT.getName(), ExternFunction.GET_INT);
-        // externalFunctions.put(ExternFunction.GET_CH.getName(), ExternFunction.GET_CH);
-        // externalFunctions.put(ExternFunction.GET_FLOAT.getName(), ExternFunction.GET_FLOAT);
-        // externalFunctions.put(ExternFunction.GET_ARR.getName(), ExternFunction.GET_ARR);
-        // externalFunctions.put(ExternFunction.GET_FARR.getName(), ExternFunction.GET_FARR);
-        // externalFunctions.put(ExternFunction.PUT_INT.getName(), ExternFunction.PUT_INT);
-        // externalFunctions.put(ExternFunction.PUT_CH.getName(), ExternFunction.PUT_CH);
-        // externalFunctions.put(ExternFunction.PUT_FLOAT.getName(), ExternFunction.PUT_FLOAT);
-        // externalFunctions.put(ExternFunction.PUT_ARR.getName(), ExternFunction.PUT_ARR);
-        // externalFunctions.put(ExternFunction.PUT_FARR.getName(), ExternFunction.PUT_FARR);
-        // externalFunctions.put(ExternFunction.MEM_SET.getName(), ExternFunction.MEM_SET);
-        // externalFunctions.put(ExternFunction.START_TIME.getName(), ExternFunction.START_TIME);
-        // externalFunctions.put(ExternFunction.STOP_TIME.getName(), ExternFunction.STOP_TIME);
-        // externalFunctions.put(ExternFunction.PARALLEL_START.getName(), ExternFunction.PARALLEL_START);
-        // externalFunctions.put(ExternFunction.PARALLEL_END.getName(), ExternFunction.PARALLEL_END);
     }
 
     public void addGlobal(GlobalValue value) {
@@ -92,35 +93,72 @@ public class Manager {
         return functions.containsKey(name);
     }
 
-    public static HashMap<String, Function> getFunctions() {
+    public HashMap<String, Function> getFunctions() {
         return functions;
     }
 
-    static int outputLLVMCnt = 0;
-
     public void outputLLVM(OutputStream out) {
-        OutputHandler.clearLlvmString();
+        Emitter emitter = context.getEmitter(out);
         // 全局变量
         for (GlobalValue globalValue : globals) {
-            OutputHandler.addLlvmString(globalValue.toString());
+            globalValue.output(emitter);
         }
         //函数声明
         for (Function function : externalFunctions.values()) {
-        OutputHandler.addLlvmString(function.declare());
+            emitter.print(function.declare());
         }
-        // 函数定义
+        // 函数定义，使用缓存时未命中的函数输出后存入缓存
+        OutputCache cache = context.getCache();
         for (Function function : functions.values()) {
             if(externalFunctions.containsKey(function.getName())) continue;
-            OutputHandler.addLlvmString(function.toString());
-        }
-        try {
-            OutputHandler.outputLlvmString(out);
-        } catch (Exception e) {
-            e.printStackTrace();
+            if (cache == null) {
+                function.output(emitter);
+                continue;
+            }
+            String text = cache.lookup(function, "ll");
+            if (text == null) {
+                text = OutputCache.render(function::output);
+                cache.store(function, "ll", text);
+            }
+            emitter.print(text);
         }
+        emitter.flush();
     }
 
     public void outputArm(OutputStream out){
-
+        Emitter emitter = context.getEmitter(out);
+        emitter.println("\t.arch armv7ve");
+        emitter.println("\t.fpu vfpv4");
+        emitter.println("\t.arm");
+        // 有非零初值的全局变量放在.data，其余放在.bss，只读的常量表放在.rodata
+        emitter.println("\t.data");
+        for (GlobalValue globalValue : globals) {
+            if (!globalValue.isConstant() && !globalValue.isZeroInit())
+                globalValue.outputArm(emitter);
+        }
+        emitter.println("\t.bss");
+        for (GlobalValue globalValue : globals) {
+            if (!globalValue.isConstant() && globalValue.isZeroInit())
+                globalValue.outputArm(emitter);
+        }
+        emitter.println("\t.section .rodata");
+        for (GlobalValue globalValue : globals) {
+            if (globalValue.isConstant())
+                globalValue.outputArm(emitter);
+        }
+        emitter.println("\t.text");
+        OutputCache cache = context.getCache();
+        for (McFunction mcFunction : context.getCodeGen().getMcFunctions()) {
+            if (cache == null) {
+                mcFunction.output(emitter);
+            } else if (mcFunction.getCachedText() != null) {
+                emitter.print(mcFunction.getCachedText());
+            } else {
+                String text = OutputCache.render(mcFunction::output);
+                cache.store(mcFunction.getIrFunction(), "s", text);
+                emitter.print(text);
+            }
+        }
+        emitter.flush();
     }
 }
@@ -0,0 +1,191 @@
+package manager;
+
+import frontend.parser.SysYParser;
+import ir.Function;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import util.Arg;
+import util.Emitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * 按函数缓存LLVM和汇编输出文本的磁盘缓存，-cache=dir指定目录
+ * 函数的键是SHA-256摘要，覆盖影响输出的选项、该函数及其直接或间接调用的所有函数的记号序列，
+ * 以及这些函数引用的全局声明(连同声明中引用的其他全局声明)；内联和函数属性分析只看被调函数，
+ * 所以键相同的函数经过中端和后端得到的文本也相同
+ * 内联需要被调函数的IR，因此解析、生成IR和中端仍对所有函数执行；命中的函数跳过指令选择和寄存器分配，输出时直接写入缓存的文本
+ * 缓存文件为dir/键.ll和dir/键.s，先写临时文件再改名，并发的编译不会读到写了一半的文件；读写出错时当作未命中
+ */
+public class OutputCache {
+    // 输出格式或各阶段的实现改变时修改，使旧的缓存失效
+    private static final String VERSION = "1";
+
+    private final Path dir;
+    private final Arg arg;
+    private final HashMap<String, String> keys = new HashMap<>(); // 函数名 -> 键
+
+    private static class FuncInfo {
+        final String digest; // 函数记号序列的摘要
+        final TreeSet<String> refs = new TreeSet<>(); // 函数中出现的所有标识符
+
+        FuncInfo(String digest) {
+            this.digest = digest;
+        }
+    }
+
+    public OutputCache(Arg arg) {
+        this.dir = Paths.get(arg.cacheDir);
+        this.arg = arg;
+    }
+
+    // 由语法树计算各函数的键，需要在生成IR之前调用
+    public void computeKeys(ParseTree compUnit) {
+        HashMap<String, String> declDigests = new HashMap<>(); // 全局名字 -> 声明的摘要
+        HashMap<String, FuncInfo> funcs = new HashMap<>();
+        for (int i = 0; i < compUnit.getChildCount(); i++) {
+            ParseTree child = compUnit.getChild(i);
+            StringBuilder text = new StringBuilder();
+            TreeSet<String> refs = new TreeSet<>();
+            collect(child, text, refs);
+            if (child instanceof SysYParser.DeclContext) {
+                // 声明只能引用之前的全局声明，按顺序把它们的摘要并入，常量的值改变时引用它的数组类型也随之改变
+                for (String ref : refs) {
+                    String digest = declDigests.get(ref);
+                    if (digest != null)
+                        text.append('\0').append(digest);
+                }
+                String digest = digest(text.toString());
+                for (ParseTree def : defs((SysYParser.DeclContext) child)) {
+                    declDigests.put(def.getText(), digest);
+                }
+            } else if (child instanceof SysYParser.FuncDefContext) {
+                FuncInfo info = new FuncInfo(digest(text.toString()));
+                info.refs.addAll(refs);
+                funcs.put(((SysYParser.FuncDefContext) child).IDENT().getText(), info);
+            }
+        }
+        for (String name : funcs.keySet()) {
+            // 调用闭包中的函数按名字排序，与定义顺序无关
+            TreeSet<String> closure = new TreeSet<>();
+            ArrayList<String> worklist = new ArrayList<>();
+            worklist.add(name);
+            while (!worklist.isEmpty()) {
+                String cur = worklist.remove(worklist.size() - 1);
+                if (!closure.add(cur))
+                    continue;
+                for (String ref : funcs.get(cur).refs) {
+                    if (funcs.containsKey(ref))
+                        worklist.add(ref);
+                }
+            }
+            StringBuilder key = new StringBuilder();
+            key.append(VERSION).append('\0').append(arg.opt).append('\0').append(arg.inlineThreshold);
+            for (String member : closure) {
+                FuncInfo info = funcs.get(member);
+                key.append('\0').append(member).append('\0').append(info.digest);
+                // 局部变量与全局变量同名时也并入，只会使键变得保守
+                for (String ref : info.refs) {
+                    String digest = declDigests.get(ref);
+                    if (digest != null)
+                        key.append('\0').append(ref).append('\0').append(digest);
+                }
+            }
+            keys.put(name, digest(key.toString()));
+        }
+    }
+
+    // 以空格分隔的记号序列，同时收集出现的标识符
+    private static void collect(ParseTree tree, StringBuilder text, TreeSet<String> refs) {
+        if (tree instanceof TerminalNode) {
+            TerminalNode node = (TerminalNode) tree;
+            text.append(node.getText()).append(' ');
+            if (node.getSymbol().getType() == SysYParser.IDENT)
+                refs.add(node.getText());
+            return;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            collect(tree.getChild(i), text, refs);
+        }
+    }
+
+    // 声明中定义的名字
+    private static ArrayList<TerminalNode> defs(SysYParser.DeclContext decl) {
+        ArrayList<TerminalNode> ret = new ArrayList<>();
+        if (decl.constDecl() != null) {
+            for (SysYParser.ConstDefContext def : decl.constDecl().constDef()) {
+                ret.add(def.IDENT());
+            }
+        } else {
+            for (SysYParser.VarDefContext def : decl.varDecl().varDef()) {
+                ret.add(def.IDENT());
+            }
+        }
+        return ret;
+    }
+
+    private static String digest(String text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    // 缓存的文本，kind为ll或s，未命中时返回null
+    public String lookup(Function function, String kind) {
+        String key = keys.get(function.getName());
+        if (key == null)
+            return null;
+        try {
+            return Files.readString(dir.resolve(key + "." + kind), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("cache: " + e);
+            return null;
+        }
+    }
+
+    public void store(Function function, String kind, String text) {
+        String key = keys.get(function.getName());
+        if (key == null)
+            return;
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            Files.writeString(tmp, text, StandardCharsets.UTF_8);
+            Files.move(tmp, dir.resolve(key + "." + kind), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("cache: " + e);
+        }
+    }
+
+    // 把输出写成字符串，用于存入缓存
+    public static String render(Consumer<Emitter> output) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Emitter emitter = new Emitter(out);
+        output.accept(emitter);
+        emitter.flush();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
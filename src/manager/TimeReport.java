@@ -0,0 +1,196 @@
+package manager;
+
+import ir.BasicBlock;
+import ir.Function;
+import lir.McFunction;
+import util.OutputHandler;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * -time-report：记录每个阶段(每个pass)的墙钟时间、分配的字节数，以及阶段前后的IR规模
+ * IR规模包括各Function的指令数、基本块数和各McFunction的虚拟寄存器数
+ * 分配字节数是所有存活线程的分配量之差，并行阶段中工作线程的分配也计算在内；
+ * 常驻模式下同时进行的其他编译也会被计入，需要精确数字时应使用-threads=1单独编译
+ */
+public class TimeReport {
+    private final CompilationContext context;
+    private final ArrayList<Stage> stages = new ArrayList<>();
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    // 一个阶段的测量结果
+    private static class Stage {
+        String name;
+        long nanos;
+        long allocatedBytes;
+        Sizes before;
+        Sizes after;
+    }
+
+    // 某一时刻整个编译单元的IR规模
+    private static class Sizes {
+        int instrs = 0;
+        int blocks = 0;
+        int vregs = 0;
+        // 函数名 -> {指令数, 基本块数, 虚拟寄存器数}
+        LinkedHashMap<String, int[]> functions = new LinkedHashMap<>();
+    }
+
+    TimeReport(CompilationContext context) {
+        this.context = context;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean && sunBean.isThreadAllocatedMemorySupported()) {
+            sunBean.setThreadAllocatedMemoryEnabled(true);
+            threadBean = sunBean;
+        } else {
+            threadBean = null;
+        }
+    }
+
+    // 执行一个阶段并记录，统计IR规模的时间不计入阶段耗时
+    public void measure(String name, Runnable stage) {
+        Stage record = new Stage();
+        record.name = name;
+        record.before = collectSizes();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        stage.run();
+        record.nanos = System.nanoTime() - start;
+        record.allocatedBytes = allocated < 0 ? -1 : allocatedBytes() - allocated;
+        record.after = collectSizes();
+        stages.add(record);
+    }
+
+    private long allocatedBytes() {
+        if (threadBean == null)
+            return -1;
+        long sum = 0;
+        for (long bytes : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+            // 已结束的线程返回-1
+            if (bytes > 0)
+                sum += bytes;
+        }
+        return sum;
+    }
+
+    private Sizes collectSizes() {
+        Sizes sizes = new Sizes();
+        for (Function function : context.getManager().getFunctions().values()) {
+            if (function.isExternal())
+                continue;
+            int[] size = new int[3];
+            for (BasicBlock block : function.getBasicBlocks()) {
+                size[0] += block.getInstrs().size();
+                size[1]++;
+            }
+            sizes.functions.put(function.getName(), size);
+        }
+        for (McFunction mcFunction : context.getCodeGen().getMcFunctions()) {
+            int[] size = sizes.functions.computeIfAbsent(mcFunction.getName(), k -> new int[3]);
+            size[2] = mcFunction.vrList.size() + mcFunction.svrList.size();
+        }
+        for (int[] size : sizes.functions.values()) {
+            sizes.instrs += size[0];
+            sizes.blocks += size[1];
+            sizes.vregs += size[2];
+        }
+        return sizes;
+    }
+
+    // 按-time-report的参数输出：为空时在标准错误上打印表格，否则把JSON写入该文件
+    public void output(String target) {
+        if (target.isEmpty()) {
+            printTable(System.err);
+            return;
+        }
+        FileOutputStream out = OutputHandler.getOutputFile(target);
+        OutputHandler.output2Stream(toJson(), out);
+        OutputHandler.closeOutputFile(out);
+    }
+
+    public void printTable(PrintStream out) {
+        long total = 0;
+        for (Stage stage : stages) {
+            total += stage.nanos;
+        }
+        out.println("===== time report: " + context.getArg().srcFile + " =====");
+        out.printf("%-14s %10s %6s %12s %15s %13s %13s%n",
+                "stage", "wall(ms)", "%", "alloc(KB)", "instrs", "blocks", "vregs");
+        for (Stage stage : stages) {
+            out.printf("%-14s %10.3f %6.1f %12s %15s %13s %13s%n",
+                    stage.name, stage.nanos / 1e6, total == 0 ? 0.0 : stage.nanos * 100.0 / total,
+                    stage.allocatedBytes < 0 ? "n/a" : String.valueOf(stage.allocatedBytes / 1024),
+                    change(stage.before.instrs, stage.after.instrs),
+                    change(stage.before.blocks, stage.after.blocks),
+                    change(stage.before.vregs, stage.after.vregs));
+        }
+        out.printf("%-14s %10.3f%n", "total", total / 1e6);
+    }
+
+    private static String change(int before, int after) {
+        return before == after ? String.valueOf(after) : before + "->" + after;
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"file\": \"").append(escape(context.getArg().srcFile)).append("\",\n");
+        sb.append("  \"stages\": [");
+        for (int i = 0; i < stages.size(); i++) {
+            Stage stage = stages.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {\"name\": \"").append(escape(stage.name)).append("\"");
+            sb.append(", \"wall_ns\": ").append(stage.nanos);
+            sb.append(", \"allocated_bytes\": ").append(stage.allocatedBytes);
+            sb.append(",\n     \"before\": ");
+            appendSizes(sb, stage.before);
+            sb.append(",\n     \"after\": ");
+            appendSizes(sb, stage.after);
+            sb.append("}");
+        }
+        sb.append("\n  ]\n}\n");
+        return sb.toString();
+    }
+
+    private static void appendSizes(StringBuilder sb, Sizes sizes) {
+        sb.append("{\"instrs\": ").append(sizes.instrs)
+                .append(", \"blocks\": ").append(sizes.blocks)
+                .append(", \"vregs\": ").append(sizes.vregs)
+                .append(", \"functions\": {");
+        boolean first = true;
+        for (var entry : sizes.functions.entrySet()) {
+            int[] size = entry.getValue();
+            sb.append(first ? "" : ", ").append('"').append(escape(entry.getKey())).append("\": ")
+                    .append("{\"instrs\": ").append(size[0])
+                    .append(", \"blocks\": ").append(size[1])
+                    .append(", \"vregs\": ").append(size[2]).append('}');
+            first = false;
+        }
+        sb.append("}}");
+    }
+
+    // JSON字符串中的引号、反斜杠和控制字符需要转义
+    private static String escape(String str) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
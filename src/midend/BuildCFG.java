@@ -0,0 +1,117 @@
+package midend;
+
+import ir.BasicBlock;
+import ir.Function;
+import ir.instruction.Branch;
+import ir.instruction.Instr;
+import ir.instruction.Jump;
+import ir.instruction.Phi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * 根据跳转指令构建控制流图，填充precBBlocks和succBBlocks，
+ * 同时删除跳转之后的死指令以及从入口不可达的基本块
+ */
+public class BuildCFG {
+    private final HashMap<String, Function> functions;
+
+    public BuildCFG(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            build(function);
+        }
+    }
+
+    public static void build(Function function) {
+        // break/continue/return之后可能还有指令，只保留第一条跳转指令
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            ArrayList<Instr> dead = new ArrayList<>();
+            boolean terminated = false;
+            for (Instr instr : basicBlock.getInstrs()) {
+                if (terminated) {
+                    dead.add(instr);
+                } else if (instr.isTerminator()) {
+                    terminated = true;
+                }
+            }
+            for (Instr instr : dead) {
+                instr.remove();
+            }
+        }
+        computeEdges(function);
+        removeUnreachable(function);
+    }
+
+    public static void computeEdges(Function function) {
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            basicBlock.precBBlocks.clear();
+            basicBlock.succBBlocks.clear();
+        }
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            if (basicBlock.getInstrs().isEmpty())
+                continue;
+            Instr last = basicBlock.getLast();
+            if (last instanceof Jump) {
+                addEdge(basicBlock, ((Jump) last).getTargetBlock());
+            } else if (last instanceof Branch) {
+                addEdge(basicBlock, ((Branch) last).getThenBlock());
+                addEdge(basicBlock, ((Branch) last).getElseBlock());
+            }
+        }
+    }
+
+    private static void addEdge(BasicBlock from, BasicBlock to) {
+        if (!from.succBBlocks.contains(to)) {
+            from.succBBlocks.add(to);
+            to.precBBlocks.add(from);
+        }
+    }
+
+    private static void removeUnreachable(Function function) {
+        BasicBlock entry = function.getBasicBlocks().getFirst();
+        HashSet<BasicBlock> reachable = new HashSet<>();
+        ArrayList<BasicBlock> worklist = new ArrayList<>();
+        reachable.add(entry);
+        worklist.add(entry);
+        while (!worklist.isEmpty()) {
+            BasicBlock basicBlock = worklist.remove(worklist.size() - 1);
+            for (BasicBlock succ : basicBlock.succBBlocks) {
+                if (reachable.add(succ)) {
+                    worklist.add(succ);
+                }
+            }
+        }
+        ArrayList<BasicBlock> dead = new ArrayList<>();
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            if (!reachable.contains(basicBlock)) {
+                dead.add(basicBlock);
+            }
+        }
+        for (BasicBlock basicBlock : dead) {
+            for (BasicBlock succ : basicBlock.succBBlocks) {
+                succ.precBBlocks.remove(basicBlock);
+                for (Instr instr : succ.getInstrs()) {
+                    if (instr instanceof Phi) {
+                        ((Phi) instr).removeIncoming(basicBlock);
+                    }
+                }
+            }
+            ArrayList<Instr> instrs = new ArrayList<>();
+            for (Instr instr : basicBlock.getInstrs()) {
+                instrs.add(instr);
+            }
+            for (Instr instr : instrs) {
+                instr.remove();
+            }
+            function.removeBlock(basicBlock);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package midend;
+
+import ir.BasicBlock;
+import ir.Function;
+import ir.Used;
+import ir.Value;
+import ir.instruction.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * 死代码删除：
+ * 先删除只被写入、从未被读取的局部变量和数组(alloca及其所有store/memset/memcpy)，
+ * 再从有副作用的指令(store、非纯函数调用、跳转和返回)出发标记活跃指令，删除其余所有指令，
+ * 这样互相引用但不被使用的phi环也能删掉
+ * 纯函数的调用结果无用时也会被删除，因此最好在FuncAnalysis之后运行
+ */
+public class DCE {
+    private final HashMap<String, Function> functions;
+
+    public DCE(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            removeDeadAllocs(function);
+            removeDeadInstrs(function);
+        }
+    }
+
+    private static boolean hasSideEffect(Instr instr) {
+        if (instr instanceof Call)
+            return !((Call) instr).getFunction().isPure();
+        return instr instanceof Store || instr.isTerminator();
+    }
+
+    private void removeDeadInstrs(Function function) {
+        // 以指令编号为下标
+        BitSet live = new BitSet(function.getValueIdBound());
+        ArrayList<Instr> worklist = new ArrayList<>();
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            for (Instr instr : basicBlock.getInstrs()) {
+                if (hasSideEffect(instr) && !live.get(instr.getIndex())) {
+                    live.set(instr.getIndex());
+                    worklist.add(instr);
+                }
+            }
+        }
+        while (!worklist.isEmpty()) {
+            Instr instr = worklist.remove(worklist.size() - 1);
+            for (Value value : instr.getUses()) {
+                if (value instanceof Instr && !live.get(value.getIndex())) {
+                    live.set(value.getIndex());
+                    worklist.add((Instr) value);
+                }
+            }
+        }
+        ArrayList<Instr> dead = new ArrayList<>();
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            for (Instr instr : basicBlock.getInstrs()) {
+                if (!live.get(instr.getIndex()))
+                    dead.add(instr);
+            }
+        }
+        // 死指令之间可能互相使用，先全部断开使用关系再删除
+        for (Instr instr : dead) {
+            instr.dropAllUses();
+        }
+        for (Instr instr : dead) {
+            instr.remove();
+        }
+    }
+
+    private void removeDeadAllocs(Function function) {
+        ArrayList<Alloc> allocs = new ArrayList<>();
+        for (Instr instr : function.getBasicBlocks().getFirst().getInstrs()) {
+            if (instr instanceof Alloc)
+                allocs.add((Alloc) instr);
+        }
+        for (Alloc alloc : allocs) {
+            ArrayList<Instr> writes = new ArrayList<>();
+            if (!onlyWritten(alloc, writes))
+                continue;
+            // alloca和地址计算没有了使用者，留给后面的标记删除处理
+            for (Instr instr : writes) {
+                instr.remove();
+            }
+        }
+    }
+
+    private static boolean isMemset(Function function) {
+        return function.isExternal() && function.getName().equals("memset");
+    }
+
+    private static boolean isMemcpy(Function function) {
+        return function.isExternal() && function.getName().equals("memcpy");
+    }
+
+    // 地址(及由它计算出的地址)只作为store的目标、memset的参数或memcpy的目标时返回true，并收集这些写入
+    private boolean onlyWritten(Value pointer, ArrayList<Instr> writes) {
+        for (Used used : pointer.getUsedInfo()) {
+            Instr user = used.getUser();
+            if (user instanceof Store && used.getIdx() == 1) {
+                writes.add(user);
+            } else if (user instanceof Call && isMemset(((Call) user).getFunction())) {
+                writes.add(user);
+            } else if (user instanceof Call && isMemcpy(((Call) user).getFunction()) && used.getIdx() == 1) {
+                writes.add(user);
+            } else if (user instanceof GetElementPtr || user instanceof BitCast) {
+                if (!onlyWritten(user, writes))
+                    return false;
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,139 @@
+package midend;
+
+import ir.BasicBlock;
+import ir.Function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * 支配树与支配边界分析，需要先由BuildCFG构建好控制流图
+ * 直接支配者使用Cooper-Harvey-Kennedy的迭代算法计算
+ */
+public class DomAnalysis {
+    private final HashMap<String, Function> functions;
+
+    public DomAnalysis(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            analyze(function);
+        }
+    }
+
+    // 逆后序遍历，只包含从入口可达的块
+    public static ArrayList<BasicBlock> reversePostOrder(Function function) {
+        BasicBlock entry = function.getBasicBlocks().getFirst();
+        ArrayList<BasicBlock> postOrder = new ArrayList<>();
+        BitSet visited = new BitSet(function.getBlockIdBound()); // 以基本块编号为下标
+        ArrayList<BasicBlock> stack = new ArrayList<>();
+        ArrayList<Integer> nextSucc = new ArrayList<>();
+        visited.set(entry.getLabel());
+        stack.add(entry);
+        nextSucc.add(0);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            BasicBlock basicBlock = stack.get(top);
+            int idx = nextSucc.get(top);
+            if (idx < basicBlock.succBBlocks.size()) {
+                nextSucc.set(top, idx + 1);
+                BasicBlock succ = basicBlock.succBBlocks.get(idx);
+                if (!visited.get(succ.getLabel())) {
+                    visited.set(succ.getLabel());
+                    stack.add(succ);
+                    nextSucc.add(0);
+                }
+            } else {
+                postOrder.add(basicBlock);
+                stack.remove(top);
+                nextSucc.remove(top);
+            }
+        }
+        ArrayList<BasicBlock> rpo = new ArrayList<>();
+        for (int i = postOrder.size() - 1; i >= 0; i--) {
+            rpo.add(postOrder.get(i));
+        }
+        return rpo;
+    }
+
+    public static void analyze(Function function) {
+        ArrayList<BasicBlock> rpo = reversePostOrder(function);
+        // 基本块编号 -> 在逆后序中的位置，不可达的块为-1
+        int[] order = new int[function.getBlockIdBound()];
+        Arrays.fill(order, -1);
+        for (int i = 0; i < rpo.size(); i++) {
+            order[rpo.get(i).getLabel()] = i;
+        }
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            basicBlock.setIdom(null);
+            basicBlock.getIdoms().clear();
+            basicBlock.getDomFrontier().clear();
+            basicBlock.setDomLevel(0);
+        }
+
+        BasicBlock entry = rpo.get(0);
+        BasicBlock[] idom = new BasicBlock[rpo.size()];
+        idom[0] = entry;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < rpo.size(); i++) {
+                BasicBlock basicBlock = rpo.get(i);
+                BasicBlock newIdom = null;
+                for (BasicBlock prec : basicBlock.precBBlocks) {
+                    int p = order[prec.getLabel()];
+                    if (p < 0 || idom[p] == null)
+                        continue;
+                    newIdom = newIdom == null ? prec : intersect(prec, newIdom, idom, order, rpo);
+                }
+                if (idom[i] != newIdom) {
+                    idom[i] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+
+        for (int i = 1; i < rpo.size(); i++) {
+            BasicBlock basicBlock = rpo.get(i);
+            basicBlock.setIdom(idom[i]);
+            idom[i].getIdoms().add(basicBlock);
+            // 逆后序中直接支配者一定先于当前块出现
+            basicBlock.setDomLevel(idom[i].getDomLevel() + 1);
+        }
+
+        for (BasicBlock basicBlock : rpo) {
+            if (basicBlock.precBBlocks.size() < 2)
+                continue;
+            for (BasicBlock prec : basicBlock.precBBlocks) {
+                if (order[prec.getLabel()] < 0)
+                    continue;
+                BasicBlock runner = prec;
+                while (runner != basicBlock.getIdom()) {
+                    runner.getDomFrontier().add(basicBlock);
+                    runner = runner.getIdom();
+                }
+            }
+        }
+    }
+
+    private static BasicBlock intersect(BasicBlock b1, BasicBlock b2, BasicBlock[] idom,
+                                        int[] order, ArrayList<BasicBlock> rpo) {
+        int finger1 = order[b1.getLabel()];
+        int finger2 = order[b2.getLabel()];
+        while (finger1 != finger2) {
+            while (finger1 > finger2) {
+                finger1 = order[idom[finger1].getLabel()];
+            }
+            while (finger2 > finger1) {
+                finger2 = order[idom[finger2].getLabel()];
+            }
+        }
+        return rpo.get(finger1);
+    }
+}
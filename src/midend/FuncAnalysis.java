@@ -0,0 +1,75 @@
+package midend;
+
+import ir.BasicBlock;
+import ir.Function;
+import ir.Value;
+import ir.instruction.*;
+import ir.type.PointerType;
+
+import java.util.HashMap;
+
+/**
+ * 函数副作用分析：不读写非局部内存、没有指针参数、只调用纯函数的函数为纯函数
+ * 纯函数的调用可以参与公共子表达式消除
+ */
+public class FuncAnalysis {
+    private final HashMap<String, Function> functions;
+
+    public FuncAnalysis(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            function.setPure(!function.isExternal() && isLocalOnly(function));
+        }
+        // 调用了非纯函数的函数也不是纯函数，迭代到不动点，递归调用自身不影响结果
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Function function : functions.values()) {
+                if (!function.isPure())
+                    continue;
+                for (BasicBlock basicBlock : function.getBasicBlocks()) {
+                    for (Instr instr : basicBlock.getInstrs()) {
+                        if (instr instanceof Call && !((Call) instr).getFunction().isPure()) {
+                            function.setPure(false);
+                            changed = true;
+                            break;
+                        }
+                    }
+                    if (!function.isPure())
+                        break;
+                }
+            }
+        }
+    }
+
+    private boolean isLocalOnly(Function function) {
+        for (Function.Param param : function.getParams()) {
+            if (param.getType() instanceof PointerType)
+                return false;
+        }
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            for (Instr instr : basicBlock.getInstrs()) {
+                if (instr instanceof Load && !(getRoot(((Load) instr).getPointer()) instanceof Alloc))
+                    return false;
+                if (instr instanceof Store && !(getRoot(((Store) instr).getAddress()) instanceof Alloc))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // 地址的来源，穿过gep和bitcast
+    public static Value getRoot(Value pointer) {
+        while (true) {
+            if (pointer instanceof GetElementPtr)
+                pointer = ((GetElementPtr) pointer).getPointer();
+            else if (pointer instanceof BitCast)
+                pointer = ((BitCast) pointer).getValue();
+            else
+                return pointer;
+        }
+    }
+}
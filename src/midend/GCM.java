@@ -0,0 +1,163 @@
+package midend;
+
+import frontend.semantic.OpTree;
+import ir.BasicBlock;
+import ir.Function;
+import ir.Used;
+import ir.Value;
+import ir.Variable;
+import ir.instruction.*;
+import ir.type.Int32Type;
+import util.MyNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * 全局代码移动(Click)：先求出每条可移动指令最早能放置的块(操作数所在块中支配树最深的)，
+ * 再求出所有使用者的最近公共支配者作为最晚位置，在两者之间的支配链上选循环深度最小、尽量靠后的块
+ * 需要先运行DomAnalysis和LoopAnalysis
+ */
+public class GCM {
+    private final HashMap<String, Function> functions;
+
+    // 相邻指令位置的初始间隔
+    private static final long GAP = 1L << 20;
+
+    private HashMap<Instr, BasicBlock> early;
+    // 指令在所在块内的位置，越靠前越小；移动指令时取新位置前后两条指令的中点，没有空隙时重新编号整个块
+    private HashMap<Instr, Long> position;
+
+    public GCM(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            runOnFunction(function);
+        }
+    }
+
+    // 只移动没有副作用且不会出错的指令，函数调用即使是纯函数也可能开销很大，不做投机执行
+    private boolean isFloating(Instr instr) {
+        if (instr instanceof Binary) {
+            Binary binary = (Binary) instr;
+            OpTree.Operator op = binary.getOp();
+            if (binary.getType() instanceof Int32Type && (op == OpTree.Operator.Div || op == OpTree.Operator.Mod)) {
+                Value rhs = binary.getRight();
+                return rhs instanceof Variable.ConstInt && ((Variable.ConstInt) rhs).getIntVal() != 0;
+            }
+            return true;
+        }
+        return instr instanceof Icmp || instr instanceof Fcmp || instr instanceof GetElementPtr
+                || instr instanceof Zext || instr instanceof Sitofp || instr instanceof Fptosi
+                || instr instanceof Unary || instr instanceof BitCast;
+    }
+
+    private void runOnFunction(Function function) {
+        ArrayList<BasicBlock> rpo = DomAnalysis.reversePostOrder(function);
+        BasicBlock entry = rpo.get(0);
+        // 逆后序中定值总在使用之前(phi除外，phi不移动)
+        ArrayList<Instr> order = new ArrayList<>();
+        for (BasicBlock basicBlock : rpo) {
+            for (Instr instr : basicBlock.getInstrs()) {
+                if (isFloating(instr))
+                    order.add(instr);
+            }
+        }
+        early = new HashMap<>();
+        for (Instr instr : order) {
+            BasicBlock block = entry;
+            for (Value value : instr.getUses()) {
+                if (!(value instanceof Instr))
+                    continue;
+                BasicBlock opdBlock = early.getOrDefault(value, ((Instr) value).getBasicBlock());
+                if (opdBlock.getDomLevel() > block.getDomLevel())
+                    block = opdBlock;
+            }
+            early.put(instr, block);
+        }
+        position = new HashMap<>();
+        for (BasicBlock basicBlock : rpo) {
+            number(basicBlock);
+        }
+        // 逆序处理，放置一条指令时它的使用者都已经放置好
+        for (int i = order.size() - 1; i >= 0; i--) {
+            scheduleLate(order.get(i));
+        }
+    }
+
+    private void scheduleLate(Instr instr) {
+        BasicBlock lca = null;
+        for (Used used : instr.getUsedInfo()) {
+            Instr user = used.getUser();
+            BasicBlock useBlock = user instanceof Phi
+                    ? ((Phi) user).getIncomingBlocks().get(used.getIdx()) : user.getBasicBlock();
+            lca = findLCA(lca, useBlock);
+        }
+        if (lca == null) {
+            instr.remove();
+            return;
+        }
+        BasicBlock top = early.get(instr);
+        if (!top.dominates(lca))
+            return;
+        BasicBlock best = lca;
+        BasicBlock cur = lca;
+        while (cur != top && cur.getIdom() != null) {
+            cur = cur.getIdom();
+            if (cur.getLoopDepth() < best.getLoopDepth())
+                best = cur;
+        }
+        // 放在块内第一个使用者之前，没有使用者则放在跳转指令之前
+        Instr pos = best.getLast();
+        for (Used used : instr.getUsedInfo()) {
+            Instr user = used.getUser();
+            if (!(user instanceof Phi) && user.getBasicBlock() == best && position.get(user) < position.get(pos))
+                pos = user;
+        }
+        if (pos != instr) {
+            instr.moveBefore(pos);
+            place(instr, pos);
+        }
+    }
+
+    private void number(BasicBlock basicBlock) {
+        long cur = 0;
+        for (Instr instr : basicBlock.getInstrs()) {
+            position.put(instr, cur);
+            cur += GAP;
+        }
+    }
+
+    // 为刚移动到pos之前的instr分配位置
+    private void place(Instr instr, Instr pos) {
+        long high = position.get(pos);
+        MyNode prev = instr.getPrev();
+        if (!(prev instanceof Instr)) {
+            position.put(instr, high - GAP);
+            return;
+        }
+        long low = position.get((Instr) prev);
+        if (high - low > 1)
+            position.put(instr, low + (high - low) / 2);
+        else
+            number(pos.getBasicBlock());
+    }
+
+    private BasicBlock findLCA(BasicBlock a, BasicBlock b) {
+        if (a == null)
+            return b;
+        while (a.getDomLevel() > b.getDomLevel())
+            a = a.getIdom();
+        while (b.getDomLevel() > a.getDomLevel())
+            b = b.getIdom();
+        while (a != b) {
+            a = a.getIdom();
+            b = b.getIdom();
+        }
+        return a;
+    }
+}
@@ -0,0 +1,148 @@
+package midend;
+
+import frontend.semantic.OpTree;
+import ir.BasicBlock;
+import ir.Function;
+import ir.Value;
+import ir.Variable;
+import ir.instruction.*;
+import ir.type.VoidType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Stack;
+
+/**
+ * 全局值编号：沿支配树先序遍历，按操作码和操作数对纯指令做哈希，
+ * 被支配的相同表达式直接替换为支配它的那一条，需要先运行DomAnalysis和FuncAnalysis
+ */
+public class GVN {
+    private final HashMap<String, Function> functions;
+
+    private HashMap<ArrayList<Object>, Instr> valueTable;
+
+    public GVN(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            runOnFunction(function);
+        }
+    }
+
+    private void runOnFunction(Function function) {
+        valueTable = new HashMap<>();
+        // 离开一个块时撤销它加入的表项，保证表中只有支配当前块的表达式
+        Stack<BasicBlock> blockStack = new Stack<>();
+        Stack<ArrayList<ArrayList<Object>>> addedStack = new Stack<>();
+        Stack<Integer> childIdx = new Stack<>();
+        BasicBlock entry = function.getBasicBlocks().getFirst();
+        blockStack.push(entry);
+        addedStack.push(numberBlock(entry));
+        childIdx.push(0);
+        while (!blockStack.isEmpty()) {
+            BasicBlock basicBlock = blockStack.peek();
+            int idx = childIdx.pop();
+            if (idx < basicBlock.getIdoms().size()) {
+                childIdx.push(idx + 1);
+                BasicBlock child = basicBlock.getIdoms().get(idx);
+                blockStack.push(child);
+                addedStack.push(numberBlock(child));
+                childIdx.push(0);
+            } else {
+                blockStack.pop();
+                for (ArrayList<Object> key : addedStack.pop()) {
+                    valueTable.remove(key);
+                }
+            }
+        }
+    }
+
+    private ArrayList<ArrayList<Object>> numberBlock(BasicBlock basicBlock) {
+        ArrayList<ArrayList<Object>> added = new ArrayList<>();
+        ArrayList<Instr> dead = new ArrayList<>();
+        for (Instr instr : basicBlock.getInstrs()) {
+            ArrayList<Object> key = getKey(instr);
+            if (key == null)
+                continue;
+            Instr exist = valueTable.get(key);
+            if (exist == null && isCommutative(instr)) {
+                exist = valueTable.get(getKey(instr, 1, 0));
+            }
+            if (exist != null) {
+                instr.replaceAllUseWith(exist);
+                dead.add(instr);
+            } else {
+                valueTable.put(key, instr);
+                added.add(key);
+            }
+        }
+        for (Instr instr : dead) {
+            instr.remove();
+        }
+        return added;
+    }
+
+    public static boolean isCommutative(Instr instr) {
+        OpTree.Operator op = null;
+        if (instr instanceof Binary)
+            op = ((Binary) instr).getOp();
+        else if (instr instanceof Icmp)
+            op = ((Icmp) instr).getOp();
+        else if (instr instanceof Fcmp)
+            op = ((Fcmp) instr).getOp();
+        return op == OpTree.Operator.Add || op == OpTree.Operator.Mul
+                || op == OpTree.Operator.Eq || op == OpTree.Operator.Ne;
+    }
+
+    private ArrayList<Object> getKey(Instr instr) {
+        return getKey(instr, 0, 1);
+    }
+
+    // 表达式的哈希键：指令种类、运算符、类型以及操作数，常量按值比较，其余按对象比较
+    // first和second用于交换二元运算的两个操作数
+    private ArrayList<Object> getKey(Instr instr, int first, int second) {
+        Object op;
+        if (instr instanceof Binary)
+            op = ((Binary) instr).getOp();
+        else if (instr instanceof Icmp)
+            op = ((Icmp) instr).getOp();
+        else if (instr instanceof Fcmp)
+            op = ((Fcmp) instr).getOp();
+        else if (instr instanceof Unary)
+            op = ((Unary) instr).getOp();
+        else if (instr instanceof GetElementPtr || instr instanceof Zext
+                || instr instanceof Sitofp || instr instanceof Fptosi || instr instanceof BitCast)
+            op = null;
+        else if (instr instanceof Call && ((Call) instr).getFunction().isPure()
+                && !(instr.getType() instanceof VoidType))
+            op = null;
+        else
+            return null;
+        ArrayList<Object> key = new ArrayList<>();
+        key.add(instr.getClass());
+        key.add(op);
+        key.add(instr.getType().toString());
+        ArrayList<Value> uses = instr.getUses();
+        for (int i = 0; i < uses.size(); i++) {
+            int idx = i;
+            if (uses.size() == 2 && i == 0)
+                idx = first;
+            else if (uses.size() == 2 && i == 1)
+                idx = second;
+            key.add(valueKey(uses.get(idx)));
+        }
+        return key;
+    }
+
+    private Object valueKey(Value value) {
+        if (value instanceof Variable.ConstInt)
+            return "i" + ((Variable.ConstInt) value).getIntVal();
+        if (value instanceof Variable.ConstFloat)
+            return "f" + Float.floatToIntBits(((Variable.ConstFloat) value).getFloatVal());
+        return value;
+    }
+}
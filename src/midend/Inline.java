@@ -0,0 +1,283 @@
+package midend;
+
+import ir.BasicBlock;
+import ir.Function;
+import ir.Used;
+import ir.Value;
+import ir.Variable;
+import ir.instruction.*;
+import util.MyNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/**
+ * 函数内联：按调用图自底向上处理，把代价不超过阈值的非递归函数复制到调用处
+ * 代价为被调函数的指令数，每个常量实参可以在内联后被常量传播消去一部分计算，代价相应减少
+ * 需要先运行BuildCFG和Mem2Reg，内联后会重新计算调用者的控制流图和支配树，并删除不再被调用的函数
+ */
+public class Inline {
+    private final HashMap<String, Function> functions;
+    private final int threshold;
+
+    private static final int CONST_ARG_BONUS = 5;     // 每个常量实参减少的代价
+    private static final int MAX_CALLER_SIZE = 3000;  // 调用者膨胀到这个大小后不再向其中内联
+
+    private HashMap<Function, ArrayList<Function>> callees;
+    private HashSet<Function> recursive;
+
+    public Inline(HashMap<String, Function> functions, int threshold) {
+        this.functions = functions;
+        this.threshold = threshold;
+    }
+
+    public void run() {
+        buildCallGraph();
+        for (Function caller : bottomUpOrder()) {
+            boolean changed = false;
+            ArrayList<Call> calls = new ArrayList<>();
+            for (BasicBlock basicBlock : caller.getBasicBlocks()) {
+                for (Instr instr : basicBlock.getInstrs()) {
+                    if (instr instanceof Call)
+                        calls.add((Call) instr);
+                }
+            }
+            for (Call call : calls) {
+                if (shouldInline(caller, call)) {
+                    inline(caller, call);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                BuildCFG.build(caller);
+                DomAnalysis.analyze(caller);
+            }
+        }
+        removeDeadFunctions();
+    }
+
+    // 按函数表的顺序建立调用图，自底向上的处理顺序在每次编译中相同
+    private void buildCallGraph() {
+        callees = new LinkedHashMap<>();
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            ArrayList<Function> list = new ArrayList<>();
+            for (BasicBlock basicBlock : function.getBasicBlocks()) {
+                for (Instr instr : basicBlock.getInstrs()) {
+                    if (instr instanceof Call && !((Call) instr).getFunction().isExternal()
+                            && !list.contains(((Call) instr).getFunction()))
+                        list.add(((Call) instr).getFunction());
+                }
+            }
+            callees.put(function, list);
+        }
+        // 能沿调用图回到自身的函数是递归函数(包括相互递归)
+        recursive = new HashSet<>();
+        for (Function function : callees.keySet()) {
+            HashSet<Function> visited = new HashSet<>();
+            ArrayList<Function> worklist = new ArrayList<>(callees.get(function));
+            while (!worklist.isEmpty()) {
+                Function cur = worklist.remove(worklist.size() - 1);
+                if (cur == function) {
+                    recursive.add(function);
+                    break;
+                }
+                if (visited.add(cur))
+                    worklist.addAll(callees.get(cur));
+            }
+        }
+    }
+
+    // 调用图的后序，被调函数先于调用者处理，内联进来的函数体已经是内联过的
+    private ArrayList<Function> bottomUpOrder() {
+        ArrayList<Function> order = new ArrayList<>();
+        HashSet<Function> visited = new HashSet<>();
+        for (Function function : callees.keySet()) {
+            postOrder(function, visited, order);
+        }
+        return order;
+    }
+
+    private void postOrder(Function function, HashSet<Function> visited, ArrayList<Function> order) {
+        if (!visited.add(function))
+            return;
+        for (Function callee : callees.get(function)) {
+            postOrder(callee, visited, order);
+        }
+        order.add(function);
+    }
+
+    private int sizeOf(Function function) {
+        int size = 0;
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            size += basicBlock.getInstrs().size();
+        }
+        return size;
+    }
+
+    private boolean shouldInline(Function caller, Call call) {
+        Function callee = call.getFunction();
+        if (callee.isExternal() || recursive.contains(callee))
+            return false;
+        int size = sizeOf(callee);
+        if (sizeOf(caller) + size > MAX_CALLER_SIZE)
+            return false;
+        int cost = size;
+        for (Value param : call.getParams()) {
+            if (param instanceof Variable.ConstInt || param instanceof Variable.ConstFloat)
+                cost -= CONST_ARG_BONUS;
+        }
+        return cost <= threshold;
+    }
+
+    private void inline(Function caller, Call call) {
+        Function callee = call.getFunction();
+        BasicBlock block = call.getBasicBlock();
+        // 在调用处把所在块拆成两半，调用之后的指令移到新块after中
+        MyNode next = block.getNext();
+        BasicBlock after = next instanceof BasicBlock ? new BasicBlock(caller, (BasicBlock) next) : new BasicBlock(caller);
+        after.spliceInstrs((Instr) call.getNext());
+        for (Value target : after.getLast().getUses()) {
+            if (!(target instanceof BasicBlock))
+                continue;
+            for (Instr instr : ((BasicBlock) target).getInstrs()) {
+                if (!(instr instanceof Phi))
+                    break;
+                int idx = ((Phi) instr).getIncomingBlocks().indexOf(block);
+                if (idx >= 0)
+                    ((Phi) instr).setIncomingBlock(idx, after);
+            }
+        }
+
+        // 复制被调函数，先建立块和形参的映射，复制完所有指令后再统一替换操作数
+        HashMap<Value, Value> valueMap = new HashMap<>();
+        ArrayList<Value> args = call.getParams();
+        for (int i = 0; i < args.size(); i++) {
+            valueMap.put(callee.getParams().get(i), args.get(i));
+        }
+        for (BasicBlock basicBlock : callee.getBasicBlocks()) {
+            valueMap.put(basicBlock, new BasicBlock(caller, after));
+        }
+        ArrayList<Instr> clones = new ArrayList<>();
+        ArrayList<Value> retValues = new ArrayList<>();
+        ArrayList<BasicBlock> retBlocks = new ArrayList<>();
+        for (BasicBlock basicBlock : callee.getBasicBlocks()) {
+            BasicBlock newBlock = (BasicBlock) valueMap.get(basicBlock);
+            for (Instr instr : basicBlock.getInstrs()) {
+                if (instr instanceof Return) {
+                    Value retValue = ((Return) instr).getReturnValue();
+                    if (retValue != null) {
+                        retValues.add(retValue);
+                        retBlocks.add(newBlock);
+                    }
+                    clones.add(new Jump(after, newBlock));
+                    continue;
+                }
+                Instr clone = cloneInstr(instr, newBlock, valueMap);
+                valueMap.put(instr, clone);
+                clones.add(clone);
+            }
+        }
+        for (Instr clone : clones) {
+            for (int i = 0; i < clone.getUses().size(); i++) {
+                Value mapped = valueMap.get(clone.getUse(i));
+                if (mapped != null)
+                    clone.setUse(i, mapped);
+            }
+        }
+
+        new Jump((BasicBlock) valueMap.get(callee.getBasicBlocks().getFirst()), block);
+        if (retValues.size() == 1) {
+            call.replaceAllUseWith(valueMap.getOrDefault(retValues.get(0), retValues.get(0)));
+        } else if (retValues.size() > 1) {
+            Phi phi = new Phi(call.getType(), after);
+            for (int i = 0; i < retValues.size(); i++) {
+                phi.addIncoming(valueMap.getOrDefault(retValues.get(i), retValues.get(i)), retBlocks.get(i));
+            }
+            call.replaceAllUseWith(phi);
+        }
+        call.remove();
+    }
+
+    // 复制一条指令到block末尾，操作数暂时保持原样，alloca会放到调用者的入口块
+    private Instr cloneInstr(Instr instr, BasicBlock block, HashMap<Value, Value> valueMap) {
+        Instr clone;
+        if (instr instanceof Binary) {
+            Binary binary = (Binary) instr;
+            clone = new Binary(instr.getType(), binary.getOp(), binary.getLeft(), binary.getRight(), block);
+        } else if (instr instanceof Unary) {
+            clone = new Unary(instr.getType(), ((Unary) instr).getOp(), instr.getUse(0), block);
+        } else if (instr instanceof Icmp) {
+            Icmp icmp = (Icmp) instr;
+            clone = new Icmp(icmp.getLhs(), icmp.getRhs(), icmp.getOp(), block);
+        } else if (instr instanceof Fcmp) {
+            Fcmp fcmp = (Fcmp) instr;
+            clone = new Fcmp(fcmp.getLhs(), fcmp.getRhs(), fcmp.getOp(), block);
+        } else if (instr instanceof Zext) {
+            clone = new Zext(instr.getUse(0), block);
+        } else if (instr instanceof Sitofp) {
+            clone = new Sitofp(instr.getUse(0), block);
+        } else if (instr instanceof Fptosi) {
+            clone = new Fptosi(instr.getUse(0), block);
+        } else if (instr instanceof BitCast) {
+            clone = new BitCast(instr.getUse(0), instr.getType(), block);
+        } else if (instr instanceof GetElementPtr) {
+            GetElementPtr gep = (GetElementPtr) instr;
+            clone = new GetElementPtr(instr.getType().getBasicType(), gep.getPointer(), gep.getIdxList(), block);
+        } else if (instr instanceof Load) {
+            clone = new Load(((Load) instr).getPointer(), block);
+        } else if (instr instanceof Store) {
+            clone = new Store(((Store) instr).getValue(), ((Store) instr).getAddress(), block);
+        } else if (instr instanceof Call) {
+            clone = new Call(((Call) instr).getFunction(), ((Call) instr).getParams(), block);
+        } else if (instr instanceof Alloc) {
+            clone = new Alloc(instr.getType().getBasicType(), block);
+        } else if (instr instanceof Phi) {
+            Phi phi = (Phi) instr;
+            Phi newPhi = new Phi(instr.getType(), block);
+            for (int i = 0; i < phi.getIncomingBlocks().size(); i++) {
+                newPhi.addIncoming(phi.getUse(i), (BasicBlock) valueMap.get(phi.getIncomingBlocks().get(i)));
+            }
+            clone = newPhi;
+        } else if (instr instanceof Jump) {
+            clone = new Jump(((Jump) instr).getTargetBlock(), block);
+        } else if (instr instanceof Branch) {
+            Branch branch = (Branch) instr;
+            clone = new Branch(branch.getCond(), branch.getThenBlock(), branch.getElseBlock(), block);
+        } else {
+            throw new RuntimeException("can not clone " + instr);
+        }
+        clone.type = instr.getType();
+        return clone;
+    }
+
+    // 删除内联后不再被调用的函数，main除外
+    private void removeDeadFunctions() {
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Function function : new ArrayList<>(functions.values())) {
+                if (function.isExternal() || function.getName().equals("main") || isCalled(function))
+                    continue;
+                for (BasicBlock basicBlock : function.getBasicBlocks()) {
+                    for (Instr instr : basicBlock.getInstrs()) {
+                        instr.dropAllUses();
+                    }
+                }
+                functions.remove(function.getName());
+                changed = true;
+            }
+        }
+    }
+
+    private boolean isCalled(Function function) {
+        for (Used used : function.getUsedInfo()) {
+            if (used.getUser().getBasicBlock().getFunction() != function)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,191 @@
+package midend;
+
+import frontend.semantic.OpTree;
+import ir.BasicBlock;
+import ir.Function;
+import ir.GlobalValue;
+import ir.Loop;
+import ir.Value;
+import ir.Variable;
+import ir.instruction.*;
+import ir.type.ArrayType;
+import ir.type.Int32Type;
+import ir.type.Type;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * 循环不变量外提：由内向外处理每个循环，把操作数都在循环外定义的纯指令移动到前置块，
+ * 循环内没有可能写同一地址的store或函数调用时，不变的load也一并外提
+ * 需要先运行LoopAnalysis和FuncAnalysis
+ */
+public class LICM {
+    private final HashMap<String, Function> functions;
+
+    public LICM(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            ArrayList<BasicBlock> rpo = DomAnalysis.reversePostOrder(function);
+            ArrayList<Loop> loops = function.getLoops();
+            for (int i = loops.size() - 1; i >= 0; i--) {
+                if (loops.get(i).getPreheader() != null)
+                    runOnLoop(loops.get(i), rpo);
+            }
+        }
+    }
+
+    private void runOnLoop(Loop loop, ArrayList<BasicBlock> rpo) {
+        ArrayList<BasicBlock> blocks = new ArrayList<>();
+        for (BasicBlock basicBlock : rpo) {
+            if (loop.contains(basicBlock))
+                blocks.add(basicBlock);
+        }
+        MemoryInfo memory = new MemoryInfo(blocks);
+        Instr preheaderEnd = loop.getPreheader().getLast();
+        // 按支配顺序遍历，操作数总是先于使用者被外提
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock basicBlock : blocks) {
+                ArrayList<Instr> hoist = new ArrayList<>();
+                for (Instr instr : basicBlock.getInstrs()) {
+                    if (isInvariant(instr, loop) && canHoist(instr, loop, memory))
+                        hoist.add(instr);
+                }
+                for (Instr instr : hoist) {
+                    instr.moveBefore(preheaderEnd);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private boolean isInvariant(Instr instr, Loop loop) {
+        for (Value value : instr.getUses()) {
+            if (value instanceof Instr && loop.contains(((Instr) value).getBasicBlock()))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean canHoist(Instr instr, Loop loop, MemoryInfo memory) {
+        if (instr instanceof Binary) {
+            Binary binary = (Binary) instr;
+            OpTree.Operator op = binary.getOp();
+            // 整数除法可能除以零，只有除数是非零常数时才能投机执行
+            if (binary.getType() instanceof Int32Type && (op == OpTree.Operator.Div || op == OpTree.Operator.Mod)) {
+                Value rhs = binary.getRight();
+                return rhs instanceof Variable.ConstInt && ((Variable.ConstInt) rhs).getIntVal() != 0;
+            }
+            return true;
+        }
+        if (instr instanceof Icmp || instr instanceof Fcmp || instr instanceof GetElementPtr
+                || instr instanceof Zext || instr instanceof Sitofp || instr instanceof Fptosi
+                || instr instanceof Unary || instr instanceof BitCast)
+            return true;
+        if (instr instanceof Load) {
+            Value pointer = ((Load) instr).getPointer();
+            return !memory.mayWrite(pointer) && (isSafeToLoad(pointer) || executesEveryIteration(instr, loop));
+        }
+        return false;
+    }
+
+    // 地址一定合法时，即使循环体一次都不执行，提前读出也不会出错
+    private boolean isSafeToLoad(Value pointer) {
+        if (pointer instanceof GlobalValue || pointer instanceof Alloc)
+            return true;
+        if (!(pointer instanceof GetElementPtr))
+            return false;
+        GetElementPtr gep = (GetElementPtr) pointer;
+        Value base = gep.getPointer();
+        if (!(base instanceof GlobalValue || base instanceof Alloc))
+            return false;
+        Type type = base.getType().getBasicType();
+        boolean first = true;
+        for (Value idx : gep.getIdxList()) {
+            if (!(idx instanceof Variable.ConstInt))
+                return false;
+            int val = ((Variable.ConstInt) idx).getIntVal();
+            if (first) {
+                if (val != 0)
+                    return false;
+                first = false;
+                continue;
+            }
+            if (!(type instanceof ArrayType) || val < 0 || val >= ((ArrayType) type).getSize())
+                return false;
+            type = type.getBasicType();
+        }
+        return true;
+    }
+
+    // 支配所有出口的前驱，说明每次进入循环都会执行到
+    private boolean executesEveryIteration(Instr instr, Loop loop) {
+        for (BasicBlock exit : loop.getExitBlocks()) {
+            for (BasicBlock prec : exit.precBBlocks) {
+                if (loop.contains(prec) && !instr.getBasicBlock().dominates(prec))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 循环内可能被写的内存，按地址的来源(全局变量、局部数组、指针参数)区分
+     * 不同的全局变量和局部数组互不重叠，指针参数可能指向任意全局变量或调用者的数组
+     */
+    private static class MemoryInfo {
+        private final HashSet<Value> writtenRoots = new HashSet<>();
+        private boolean writesParams = false;  // 通过指针参数写入
+        private boolean writesGlobals = false; // 调用了会写全局变量的函数
+        private final HashSet<Value> escapedRoots = new HashSet<>(); // 作为参数传给了非纯函数的局部数组
+        private boolean writesUnknown = false; // 写入的地址来源不明，可能是任何内存
+
+        MemoryInfo(ArrayList<BasicBlock> blocks) {
+            for (BasicBlock basicBlock : blocks) {
+                for (Instr instr : basicBlock.getInstrs()) {
+                    if (instr instanceof Store) {
+                        Value root = FuncAnalysis.getRoot(((Store) instr).getAddress());
+                        if (root instanceof Function.Param)
+                            writesParams = true;
+                        else if (root instanceof Alloc || root instanceof GlobalValue)
+                            writtenRoots.add(root);
+                        else
+                            writesUnknown = true;
+                    } else if (instr instanceof Call && !((Call) instr).getFunction().isPure()) {
+                        writesGlobals = true;
+                        writesParams = true;
+                        for (Value param : ((Call) instr).getParams()) {
+                            escapedRoots.add(FuncAnalysis.getRoot(param));
+                        }
+                    }
+                }
+            }
+        }
+
+        boolean mayWrite(Value pointer) {
+            Value root = FuncAnalysis.getRoot(pointer);
+            if (writesUnknown || writtenRoots.contains(root) || escapedRoots.contains(root))
+                return true;
+            if (root instanceof Alloc)
+                return false;
+            if (root instanceof GlobalValue)
+                return writesParams || writesGlobals;
+            // 指针参数可能与任何全局变量或其他参数重叠
+            if (writesParams || writesGlobals)
+                return true;
+            for (Value written : writtenRoots) {
+                if (written instanceof GlobalValue)
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package midend;
+
+import ir.BasicBlock;
+import ir.Function;
+import ir.Loop;
+import ir.Value;
+import ir.instruction.Instr;
+import ir.instruction.Jump;
+import ir.instruction.Phi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * 循环分析：根据回边(跳转到支配自己的块)求出自然循环及其嵌套关系，
+ * 并规范化循环：插入唯一的前置块，使每个出口块只有循环内的前驱
+ * 需要先运行BuildCFG和DomAnalysis，规范化后会重新计算控制流图和支配树
+ */
+public class LoopAnalysis {
+    private final HashMap<String, Function> functions;
+
+    public LoopAnalysis(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            analyze(function);
+            // 每次只规范化一个循环，前驱关系改变后重新分析
+            while (canonicalize(function)) {
+                BuildCFG.computeEdges(function);
+                DomAnalysis.analyze(function);
+                analyze(function);
+            }
+        }
+    }
+
+    public static void analyze(Function function) {
+        ArrayList<BasicBlock> rpo = DomAnalysis.reversePostOrder(function);
+        HashSet<BasicBlock> reachable = new HashSet<>(rpo);
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            basicBlock.setLoop(null);
+        }
+        // 同一个循环头的多条回边属于同一个循环
+        HashMap<BasicBlock, Loop> header2Loop = new HashMap<>();
+        ArrayList<Loop> loops = new ArrayList<>();
+        for (BasicBlock header : rpo) {
+            for (BasicBlock latch : header.precBBlocks) {
+                if (!reachable.contains(latch) || !header.dominates(latch))
+                    continue;
+                Loop loop = header2Loop.get(header);
+                if (loop == null) {
+                    loop = new Loop(header);
+                    header2Loop.put(header, loop);
+                    loops.add(loop);
+                }
+                loop.getLatches().add(latch);
+                ArrayList<BasicBlock> worklist = new ArrayList<>();
+                if (loop.getBlocks().add(latch))
+                    worklist.add(latch);
+                while (!worklist.isEmpty()) {
+                    BasicBlock b = worklist.remove(worklist.size() - 1);
+                    for (BasicBlock prec : b.precBBlocks) {
+                        if (reachable.contains(prec) && loop.getBlocks().add(prec))
+                            worklist.add(prec);
+                    }
+                }
+            }
+        }
+        // 按逆后序发现的循环头，外层循环一定先于内层循环
+        for (int i = 0; i < loops.size(); i++) {
+            Loop loop = loops.get(i);
+            for (int j = i - 1; j >= 0; j--) {
+                Loop outer = loops.get(j);
+                if (outer.contains(loop.getHeader())) {
+                    loop.setParent(outer);
+                    loop.setDepth(outer.getDepth() + 1);
+                    outer.getSubLoops().add(loop);
+                    break;
+                }
+            }
+            for (BasicBlock b : loop.getBlocks()) {
+                b.setLoop(loop);
+            }
+        }
+        for (Loop loop : loops) {
+            for (BasicBlock b : loop.getBlocks()) {
+                for (BasicBlock succ : b.succBBlocks) {
+                    if (!loop.contains(succ) && !loop.getExitBlocks().contains(succ))
+                        loop.getExitBlocks().add(succ);
+                }
+            }
+            BasicBlock preheader = null;
+            for (BasicBlock prec : loop.getHeader().precBBlocks) {
+                if (loop.contains(prec))
+                    continue;
+                preheader = preheader == null && prec.succBBlocks.size() == 1 ? prec : null;
+                if (preheader == null)
+                    break;
+            }
+            loop.setPreheader(preheader);
+        }
+        function.getLoops().clear();
+        function.getLoops().addAll(loops);
+    }
+
+    private static boolean canonicalize(Function function) {
+        boolean changed = false;
+        for (Loop loop : function.getLoops()) {
+            BasicBlock header = loop.getHeader();
+            if (loop.getPreheader() == null && header != function.getBasicBlocks().getFirst()) {
+                ArrayList<BasicBlock> outside = new ArrayList<>();
+                for (BasicBlock prec : header.precBBlocks) {
+                    if (!loop.contains(prec))
+                        outside.add(prec);
+                }
+                splitPreds(function, header, outside);
+                changed = true;
+            }
+            for (BasicBlock exit : loop.getExitBlocks()) {
+                ArrayList<BasicBlock> inside = new ArrayList<>();
+                boolean dedicated = true;
+                for (BasicBlock prec : exit.precBBlocks) {
+                    if (loop.contains(prec))
+                        inside.add(prec);
+                    else
+                        dedicated = false;
+                }
+                if (!dedicated) {
+                    splitPreds(function, exit, inside);
+                    changed = true;
+                }
+            }
+            if (changed)
+                return true;
+        }
+        return false;
+    }
+
+    // 新建一个块作为preds到target的中转，preds对应的phi来源合并到新块中的phi
+    public static BasicBlock splitPreds(Function function, BasicBlock target, ArrayList<BasicBlock> preds) {
+        BasicBlock newBlock = new BasicBlock(function, target);
+        for (BasicBlock pred : preds) {
+            pred.getLast().replaceUse(target, newBlock);
+        }
+        for (Instr instr : target.getInstrs()) {
+            if (!(instr instanceof Phi))
+                break;
+            Phi phi = (Phi) instr;
+            if (preds.size() == 1) {
+                int idx = phi.getIncomingBlocks().indexOf(preds.get(0));
+                phi.setIncomingBlock(idx, newBlock);
+                continue;
+            }
+            Phi newPhi = new Phi(phi.getType(), newBlock);
+            for (BasicBlock pred : preds) {
+                Value value = phi.getIncomingValue(pred);
+                newPhi.addIncoming(value, pred);
+                phi.removeIncoming(pred);
+            }
+            phi.addIncoming(newPhi, newBlock);
+        }
+        new Jump(target, newBlock);
+        return newBlock;
+    }
+}
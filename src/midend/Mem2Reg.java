@@ -0,0 +1,221 @@
+package midend;
+
+import ir.BasicBlock;
+import ir.Function;
+import ir.Used;
+import ir.Value;
+import ir.Variable;
+import ir.instruction.*;
+import ir.type.ArrayType;
+import ir.type.FloatType;
+import ir.type.Int32Type;
+import ir.type.Type;
+import util.IntMap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Stack;
+
+/**
+ * 将只被load/store访问的标量alloca提升为SSA形式的虚拟寄存器
+ * 在迭代支配边界上插入phi，再沿支配树重命名，需要先运行BuildCFG和DomAnalysis
+ */
+public class Mem2Reg {
+    private final HashMap<String, Function> functions;
+
+    private ArrayList<Alloc> allocs;
+    // 以指令编号为下标：alloca -> 在allocs中的位置，插入的phi -> 对应的alloca
+    private IntMap<Integer> allocIndex;
+    private IntMap<Alloc> phi2Alloc;
+    private ArrayList<Phi> phis; // 插入的phi，按插入顺序
+    private ArrayList<Stack<Value>> valueStacks;
+
+    public Mem2Reg(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            runOnFunction(function);
+        }
+    }
+
+    private void runOnFunction(Function function) {
+        allocs = new ArrayList<>();
+        allocIndex = new IntMap<>(function.getValueIdBound());
+        phi2Alloc = new IntMap<>(function.getValueIdBound());
+        phis = new ArrayList<>();
+        valueStacks = new ArrayList<>();
+        for (Instr instr : function.getBasicBlocks().getFirst().getInstrs()) {
+            if (instr instanceof Alloc && isPromotable((Alloc) instr)) {
+                allocIndex.put(instr.getIndex(), allocs.size());
+                allocs.add((Alloc) instr);
+                valueStacks.add(new Stack<>());
+            }
+        }
+        if (allocs.isEmpty())
+            return;
+        for (Alloc alloc : allocs) {
+            insertPhi(alloc);
+        }
+        rename(function.getBasicBlocks().getFirst());
+        for (Alloc alloc : allocs) {
+            alloc.remove();
+        }
+        removeDeadPhi();
+    }
+
+    // 只有非数组类型且仅作为load/store地址使用的alloca可以提升
+    private boolean isPromotable(Alloc alloc) {
+        if (alloc.getType().getBasicType() instanceof ArrayType)
+            return false;
+        for (Used used : alloc.getUsedInfo()) {
+            Instr user = used.getUser();
+            if (user instanceof Load)
+                continue;
+            if (user instanceof Store && ((Store) user).getAddress() == alloc && ((Store) user).getValue() != alloc)
+                continue;
+            return false;
+        }
+        return true;
+    }
+
+    private void insertPhi(Alloc alloc) {
+        // 以基本块编号为下标
+        BitSet defBlocks = new BitSet();
+        ArrayList<BasicBlock> worklist = new ArrayList<>();
+        for (Used used : alloc.getUsedInfo()) {
+            if (used.getUser() instanceof Store) {
+                BasicBlock basicBlock = used.getUser().getBasicBlock();
+                if (!defBlocks.get(basicBlock.getLabel())) {
+                    defBlocks.set(basicBlock.getLabel());
+                    worklist.add(basicBlock);
+                }
+            }
+        }
+        BitSet hasPhi = new BitSet();
+        while (!worklist.isEmpty()) {
+            BasicBlock basicBlock = worklist.remove(worklist.size() - 1);
+            for (BasicBlock frontier : basicBlock.getDomFrontier()) {
+                if (!hasPhi.get(frontier.getLabel())) {
+                    hasPhi.set(frontier.getLabel());
+                    Phi phi = new Phi(alloc.getType().getBasicType(), frontier);
+                    phi2Alloc.put(phi.getIndex(), alloc);
+                    phis.add(phi);
+                    if (!defBlocks.get(frontier.getLabel())) {
+                        worklist.add(frontier);
+                    }
+                }
+            }
+        }
+    }
+
+    // 沿支配树先序遍历重命名，用显式栈避免支配树过深时栈溢出
+    private void rename(BasicBlock entry) {
+        Stack<BasicBlock> blockStack = new Stack<>();
+        Stack<ArrayList<Integer>> pushedStack = new Stack<>();
+        Stack<Integer> childIdx = new Stack<>();
+        blockStack.push(entry);
+        pushedStack.push(renameBlock(entry));
+        childIdx.push(0);
+        while (!blockStack.isEmpty()) {
+            BasicBlock basicBlock = blockStack.peek();
+            int idx = childIdx.pop();
+            if (idx < basicBlock.getIdoms().size()) {
+                childIdx.push(idx + 1);
+                BasicBlock child = basicBlock.getIdoms().get(idx);
+                blockStack.push(child);
+                pushedStack.push(renameBlock(child));
+                childIdx.push(0);
+            } else {
+                blockStack.pop();
+                for (int i : pushedStack.pop()) {
+                    valueStacks.get(i).pop();
+                }
+            }
+        }
+    }
+
+    // 重命名一个块内的load/store，返回本块压栈的alloca编号，退出时出栈
+    private ArrayList<Integer> renameBlock(BasicBlock basicBlock) {
+        ArrayList<Integer> pushed = new ArrayList<>();
+        ArrayList<Instr> dead = new ArrayList<>();
+        for (Instr instr : basicBlock.getInstrs()) {
+            if (instr instanceof Phi && phi2Alloc.containsKey(instr.getIndex())) {
+                int idx = allocIndex.get(phi2Alloc.get(instr.getIndex()).getIndex());
+                valueStacks.get(idx).push(instr);
+                pushed.add(idx);
+            } else if (instr instanceof Load && ((Load) instr).getPointer() instanceof Alloc) {
+                Integer idx = allocIndex.get(((Load) instr).getPointer().getIndex());
+                if (idx == null)
+                    continue;
+                instr.replaceAllUseWith(currentValue(idx));
+                dead.add(instr);
+            } else if (instr instanceof Store && ((Store) instr).getAddress() instanceof Alloc) {
+                Integer idx = allocIndex.get(((Store) instr).getAddress().getIndex());
+                if (idx == null)
+                    continue;
+                valueStacks.get(idx).push(((Store) instr).getValue());
+                pushed.add(idx);
+                dead.add(instr);
+            }
+        }
+        for (Instr instr : dead) {
+            instr.remove();
+        }
+        for (BasicBlock succ : basicBlock.succBBlocks) {
+            for (Instr instr : succ.getInstrs()) {
+                if (!(instr instanceof Phi))
+                    break;
+                Alloc alloc = phi2Alloc.get(instr.getIndex());
+                if (alloc != null) {
+                    ((Phi) instr).addIncoming(currentValue(allocIndex.get(alloc.getIndex())), basicBlock);
+                }
+            }
+        }
+        return pushed;
+    }
+
+    // 当前到达定值，未定义时使用零值
+    private Value currentValue(int idx) {
+        Stack<Value> stack = valueStacks.get(idx);
+        if (!stack.isEmpty())
+            return stack.peek();
+        Type type = allocs.get(idx).getType().getBasicType();
+        if (type instanceof Int32Type)
+            return Variable.ConstInt.get(0);
+        if (type instanceof FloatType)
+            return Variable.ConstFloat.get(0);
+        return new Variable.Undef(type);
+    }
+
+    // 删除没有被使用(或只被自身使用)的phi
+    private void removeDeadPhi() {
+        ArrayList<Phi> worklist = new ArrayList<>(phis);
+        BitSet removed = new BitSet();
+        while (!worklist.isEmpty()) {
+            Phi phi = worklist.remove(worklist.size() - 1);
+            if (removed.get(phi.getIndex()))
+                continue;
+            boolean used = false;
+            for (Used use : phi.getUsedInfo()) {
+                if (use.getUser() != phi) {
+                    used = true;
+                    break;
+                }
+            }
+            if (used)
+                continue;
+            for (Value value : phi.getUses()) {
+                if (value instanceof Phi && phi2Alloc.containsKey(value.getIndex()) && value != phi) {
+                    worklist.add((Phi) value);
+                }
+            }
+            phi.remove();
+            removed.set(phi.getIndex());
+        }
+    }
+}
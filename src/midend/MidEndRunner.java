@@ -2,26 +2,86 @@ package midend;
 
 import ir.Function;
 import ir.GlobalValue;
+import manager.CompilationContext;
+import util.Arg;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.function.Consumer;
 
 public class MidEndRunner {
     private HashMap<String, Function> functions;
     private ArrayList<GlobalValue> globals;
     private boolean opt;
+    private int inlineThreshold;
+    private final CompilationContext context = CompilationContext.current();
 
-    public MidEndRunner(HashMap<String, Function> functions, ArrayList<GlobalValue> globals, boolean opt){
+    public MidEndRunner(HashMap<String, Function> functions, ArrayList<GlobalValue> globals, Arg arg){
         this.functions = functions;
         this.globals = globals;
-        this.opt = opt;
+        this.opt = arg.opt;
+        this.inlineThreshold = arg.inlineThreshold;
     }
 
+    // Inline和FuncAnalysis需要看到所有函数，其余pass只读写当前函数，在两者之间按函数并行执行
     public void run(){
 
         if(opt){
-
+            functionPasses(
+                    new Pass("BuildCFG", function -> new BuildCFG(function).run()),
+                    new Pass("DomAnalysis", function -> new DomAnalysis(function).run()),
+                    new Pass("Mem2Reg", function -> new Mem2Reg(function).run()));
+            context.stage("Inline", () -> new Inline(functions, inlineThreshold).run());
+            functionPasses(
+                    new Pass("SCCP", function -> new SCCP(function).run()));
+            context.stage("FuncAnalysis", () -> new FuncAnalysis(functions).run());
+            functionPasses(
+                    new Pass("DCE", function -> new DCE(function).run()),
+                    new Pass("SimplifyCFG", function -> new SimplifyCFG(function).run()),
+                    new Pass("LoopAnalysis", function -> new LoopAnalysis(function).run()),
+                    new Pass("LICM", function -> new LICM(function).run()),
+                    new Pass("GVN", function -> new GVN(function).run()),
+                    new Pass("GCM", function -> new GCM(function).run()),
+                    new Pass("DCE", function -> new DCE(function).run()),
+                    new Pass("SimplifyCFG", function -> new SimplifyCFG(function).run()));
+            removeDeadConstants();
         }
         return;
     }
+
+    // 局部数组初始化用的只读常量表在DCE删掉memcpy或Inline删掉所在函数后可能不再被使用，不再输出
+    private void removeDeadConstants() {
+        globals.removeIf(globalValue -> globalValue.isConstant() && globalValue.getUsedInfo().isEmpty());
+    }
+
+    private record Pass(String name, Consumer<HashMap<String, Function>> pass) {}
+
+    // 一个函数依次执行完所有passes再处理下一个函数；
+    // 统计各pass耗时时改为每个pass对所有函数执行完再进入下一个pass，各函数的结果不变
+    private void functionPasses(Pass... passes) {
+        if (context.getTimeReport() == null) {
+            forEachFunction(function -> {
+                for (Pass pass : passes) {
+                    pass.pass().accept(function);
+                }
+            });
+            return;
+        }
+        for (Pass pass : passes) {
+            context.stage(pass.name(), () -> forEachFunction(pass.pass()));
+        }
+    }
+
+    // 每个函数单独放进一个表中交给passes，各函数的passes并行执行
+    private void forEachFunction(Consumer<HashMap<String, Function>> passes) {
+        ArrayList<HashMap<String, Function>> units = new ArrayList<>();
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            HashMap<String, Function> unit = new HashMap<>();
+            unit.put(function.getName(), function);
+            units.add(unit);
+        }
+        context.parallelForEach(units, passes);
+    }
 }
@@ -0,0 +1,303 @@
+package midend;
+
+import frontend.semantic.OpTree;
+import ir.BasicBlock;
+import ir.Function;
+import ir.Used;
+import ir.Value;
+import ir.Variable;
+import ir.instruction.*;
+import ir.type.FloatType;
+import ir.type.Int1Type;
+import ir.type.Type;
+import util.IntMap;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * 稀疏条件常量传播(Wegman & Zadeck)
+ * 格上的值为：未定(不在表中)、常量(ConstInt/ConstFloat)、非常量(BOTTOM)
+ * 只沿可执行的边传播，结束后用常量替换指令，常量条件的跳转改为无条件跳转并删除不可达的块
+ * 需要先运行BuildCFG，结束后会重新计算控制流图和支配树
+ */
+public class SCCP {
+    private final HashMap<String, Function> functions;
+
+    private static final Value BOTTOM = new Value();
+
+    // 以指令编号为下标的格值；以基本块编号为下标的可执行块，以及每个块已可执行的入边(前驱的编号)
+    private IntMap<Value> lattice;
+    private BitSet executable;
+    private IntMap<BitSet> execEdges;
+    private ArrayList<BasicBlock[]> cfgWorklist;
+    private ArrayList<Instr> ssaWorklist;
+
+    public SCCP(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            runOnFunction(function);
+            BuildCFG.build(function);
+            DomAnalysis.analyze(function);
+        }
+    }
+
+    private void runOnFunction(Function function) {
+        lattice = new IntMap<>(function.getValueIdBound());
+        executable = new BitSet(function.getBlockIdBound());
+        execEdges = new IntMap<>(function.getBlockIdBound());
+        cfgWorklist = new ArrayList<>();
+        ssaWorklist = new ArrayList<>();
+        cfgWorklist.add(new BasicBlock[]{null, function.getBasicBlocks().getFirst()});
+        while (!cfgWorklist.isEmpty() || !ssaWorklist.isEmpty()) {
+            while (!cfgWorklist.isEmpty()) {
+                BasicBlock[] edge = cfgWorklist.remove(cfgWorklist.size() - 1);
+                visitEdge(edge[0], edge[1]);
+            }
+            while (!ssaWorklist.isEmpty()) {
+                Instr instr = ssaWorklist.remove(ssaWorklist.size() - 1);
+                if (executable.get(instr.getBasicBlock().getLabel()))
+                    visit(instr);
+            }
+        }
+        rewrite(function);
+    }
+
+    private void visitEdge(BasicBlock from, BasicBlock to) {
+        if (from != null) {
+            BitSet preds = execEdges.get(to.getLabel());
+            if (preds == null) {
+                preds = new BitSet();
+                execEdges.put(to.getLabel(), preds);
+            }
+            if (preds.get(from.getLabel()))
+                return;
+            preds.set(from.getLabel());
+        }
+        if (!executable.get(to.getLabel())) {
+            executable.set(to.getLabel());
+            for (Instr instr : to.getInstrs()) {
+                visit(instr);
+            }
+        } else {
+            // 新的可执行入边只影响phi
+            for (Instr instr : to.getInstrs()) {
+                if (!(instr instanceof Phi))
+                    break;
+                visit(instr);
+            }
+        }
+    }
+
+    private boolean isExecEdge(BasicBlock from, BasicBlock to) {
+        BitSet preds = execEdges.get(to.getLabel());
+        return preds != null && preds.get(from.getLabel());
+    }
+
+    // 未定返回null
+    private Value getLattice(Value value) {
+        if (value instanceof Variable.ConstInt || value instanceof Variable.ConstFloat)
+            return value;
+        if (value instanceof Instr)
+            return lattice.get(value.getIndex());
+        return BOTTOM;
+    }
+
+    private void setLattice(Instr instr, Value value) {
+        Value old = lattice.get(instr.getIndex());
+        if (old == BOTTOM || (old != null && sameConst(old, value)))
+            return;
+        lattice.put(instr.getIndex(), value);
+        for (Used used : instr.getUsedInfo()) {
+            ssaWorklist.add(used.getUser());
+        }
+    }
+
+    // 常量由ConstantPool唯一化，值相同即是同一个对象
+    private boolean sameConst(Value a, Value b) {
+        return a == b;
+    }
+
+    private void visit(Instr instr) {
+        if (instr instanceof Phi) {
+            Phi phi = (Phi) instr;
+            Value result = null;
+            for (int i = 0; i < phi.getIncomingBlocks().size(); i++) {
+                if (!isExecEdge(phi.getIncomingBlocks().get(i), phi.getBasicBlock()))
+                    continue;
+                Value value = getLattice(phi.getUse(i));
+                if (value == null)
+                    continue;
+                if (value == BOTTOM || (result != null && !sameConst(result, value))) {
+                    result = BOTTOM;
+                    break;
+                }
+                result = value;
+            }
+            if (result != null)
+                setLattice(phi, result);
+        } else if (instr instanceof Jump) {
+            cfgWorklist.add(new BasicBlock[]{instr.getBasicBlock(), ((Jump) instr).getTargetBlock()});
+        } else if (instr instanceof Branch) {
+            Branch branch = (Branch) instr;
+            Value cond = getLattice(branch.getCond());
+            if (cond == null)
+                return;
+            if (cond == BOTTOM || ((Variable.ConstInt) cond).getIntVal() != 0)
+                cfgWorklist.add(new BasicBlock[]{branch.getBasicBlock(), branch.getThenBlock()});
+            if (cond == BOTTOM || ((Variable.ConstInt) cond).getIntVal() == 0)
+                cfgWorklist.add(new BasicBlock[]{branch.getBasicBlock(), branch.getElseBlock()});
+        } else if (instr instanceof Binary || instr instanceof Icmp || instr instanceof Fcmp || instr instanceof Unary
+                || instr instanceof Sitofp || instr instanceof Fptosi || instr instanceof Zext) {
+            ArrayList<Value> values = new ArrayList<>();
+            for (Value use : instr.getUses()) {
+                Value value = getLattice(use);
+                if (value == null)
+                    return;
+                if (value == BOTTOM) {
+                    setLattice(instr, BOTTOM);
+                    return;
+                }
+                values.add(value);
+            }
+            Value folded = fold(instr, values);
+            setLattice(instr, folded == null ? BOTTOM : folded);
+        } else if (!(instr.getType() instanceof ir.type.VoidType)) {
+            setLattice(instr, BOTTOM);
+        }
+    }
+
+    private static int intOf(Value value) {
+        return ((Variable.ConstInt) value).getIntVal();
+    }
+
+    private static float floatOf(Value value) {
+        return ((Variable.ConstFloat) value).getFloatVal();
+    }
+
+    private static Value makeConst(Type type, int intVal) {
+        if (type instanceof Int1Type)
+            return Variable.ConstInt.get(intVal, type);
+        return Variable.ConstInt.get(intVal);
+    }
+
+    // 对常量操作数求值，无法求值(例如除以零)时返回null
+    public static Value fold(Instr instr, ArrayList<Value> values) {
+        if (instr instanceof Binary) {
+            OpTree.Operator op = ((Binary) instr).getOp();
+            if (instr.getType() instanceof FloatType) {
+                float l = floatOf(values.get(0)), r = floatOf(values.get(1));
+                return switch (op) {
+                    case Add -> Variable.ConstFloat.get(l + r);
+                    case Sub -> Variable.ConstFloat.get(l - r);
+                    case Mul -> Variable.ConstFloat.get(l * r);
+                    case Div -> Variable.ConstFloat.get(l / r);
+                    default -> null;
+                };
+            }
+            int l = intOf(values.get(0)), r = intOf(values.get(1));
+            return switch (op) {
+                case Add -> makeConst(instr.getType(), l + r);
+                case Sub -> makeConst(instr.getType(), l - r);
+                case Mul -> makeConst(instr.getType(), l * r);
+                case Div -> r == 0 ? null : makeConst(instr.getType(), l / r);
+                case Mod -> r == 0 ? null : makeConst(instr.getType(), l % r);
+                case And -> makeConst(instr.getType(), l & r);
+                case Or -> makeConst(instr.getType(), l | r);
+                default -> null;
+            };
+        }
+        if (instr instanceof Icmp) {
+            int l = intOf(values.get(0)), r = intOf(values.get(1));
+            Boolean result = switch (((Icmp) instr).getOp()) {
+                case Eq -> l == r;
+                case Ne -> l != r;
+                case Lt -> l < r;
+                case Le -> l <= r;
+                case Gt -> l > r;
+                case Ge -> l >= r;
+                default -> null;
+            };
+            return result == null ? null : makeConst(instr.getType(), result ? 1 : 0);
+        }
+        if (instr instanceof Fcmp) {
+            // 有序比较，任一操作数为NaN时结果为假
+            float l = floatOf(values.get(0)), r = floatOf(values.get(1));
+            Boolean result = switch (((Fcmp) instr).getOp()) {
+                case Eq -> l == r;
+                case Ne -> l < r || l > r;
+                case Lt -> l < r;
+                case Le -> l <= r;
+                case Gt -> l > r;
+                case Ge -> l >= r;
+                default -> null;
+            };
+            return result == null ? null : makeConst(instr.getType(), result ? 1 : 0);
+        }
+        if (instr instanceof Unary) {
+            Value val = values.get(0);
+            OpTree.Operator op = ((Unary) instr).getOp();
+            if (op == OpTree.Operator.Neg) {
+                if (val instanceof Variable.ConstFloat)
+                    return Variable.ConstFloat.get(-floatOf(val));
+                return makeConst(instr.getType(), -intOf(val));
+            }
+            if (op == OpTree.Operator.Not) {
+                boolean isZero = val instanceof Variable.ConstFloat ? floatOf(val) == 0 : intOf(val) == 0;
+                return makeConst(instr.getType(), isZero ? 1 : 0);
+            }
+            return null;
+        }
+        if (instr instanceof Sitofp)
+            return Variable.ConstFloat.get((float) intOf(values.get(0)));
+        if (instr instanceof Fptosi)
+            return Variable.ConstInt.get((int) floatOf(values.get(0)));
+        if (instr instanceof Zext)
+            return Variable.ConstInt.get(intOf(values.get(0)) & 1);
+        return null;
+    }
+
+    private void rewrite(Function function) {
+        ArrayList<Instr> dead = new ArrayList<>();
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            if (!executable.get(basicBlock.getLabel()))
+                continue;
+            for (Instr instr : basicBlock.getInstrs()) {
+                Value value = lattice.get(instr.getIndex());
+                if (value != null && value != BOTTOM) {
+                    instr.replaceAllUseWith(value);
+                    dead.add(instr);
+                }
+            }
+        }
+        for (Instr instr : dead) {
+            instr.remove();
+        }
+        // 条件为常量的跳转改为无条件跳转，不再经过的后继删去对应的phi来源
+        for (BasicBlock basicBlock : function.getBasicBlocks()) {
+            if (!executable.get(basicBlock.getLabel()) || !(basicBlock.getLast() instanceof Branch))
+                continue;
+            Branch branch = (Branch) basicBlock.getLast();
+            if (!(branch.getCond() instanceof Variable.ConstInt))
+                continue;
+            boolean taken = ((Variable.ConstInt) branch.getCond()).getIntVal() != 0;
+            BasicBlock target = taken ? branch.getThenBlock() : branch.getElseBlock();
+            BasicBlock other = taken ? branch.getElseBlock() : branch.getThenBlock();
+            branch.remove();
+            new Jump(target, basicBlock);
+            if (other != target) {
+                for (Instr instr : other.getInstrs()) {
+                    if (!(instr instanceof Phi))
+                        break;
+                    ((Phi) instr).removeIncoming(basicBlock);
+                }
+            }
+        }
+    }
+}
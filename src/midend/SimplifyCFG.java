@@ -0,0 +1,166 @@
+package midend;
+
+import ir.BasicBlock;
+import ir.Function;
+import ir.Value;
+import ir.instruction.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * 控制流图化简，反复执行直到不再变化：
+ * 两个分支目标相同的条件跳转改为无条件跳转；
+ * 只有一条jump的空块被跳过，前驱直接跳到它的后继(jump链穿透)；
+ * 唯一后继只有自己一个前驱时，把后继合并进来；
+ * 同时删除不可达的块，结束后precBBlocks/succBBlocks、支配树和循环信息都是最新的
+ */
+public class SimplifyCFG {
+    private final HashMap<String, Function> functions;
+
+    public SimplifyCFG(HashMap<String, Function> functions) {
+        this.functions = functions;
+    }
+
+    public void run() {
+        for (Function function : functions.values()) {
+            if (function.isExternal())
+                continue;
+            simplify(function);
+        }
+    }
+
+    public static void simplify(Function function) {
+        BuildCFG.build(function);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            ArrayList<BasicBlock> blocks = new ArrayList<>();
+            for (BasicBlock basicBlock : function.getBasicBlocks()) {
+                blocks.add(basicBlock);
+            }
+            for (BasicBlock basicBlock : blocks) {
+                // 已经被删除的块
+                if (basicBlock.getInstrs().isEmpty())
+                    continue;
+                if (foldBranch(basicBlock) || skipEmptyBlock(function, basicBlock) || mergeSucc(function, basicBlock))
+                    changed = true;
+            }
+            if (changed)
+                BuildCFG.build(function);
+        }
+        DomAnalysis.analyze(function);
+        LoopAnalysis.analyze(function);
+    }
+
+    private static boolean foldBranch(BasicBlock basicBlock) {
+        if (!(basicBlock.getLast() instanceof Branch))
+            return false;
+        Branch branch = (Branch) basicBlock.getLast();
+        if (branch.getThenBlock() != branch.getElseBlock())
+            return false;
+        BasicBlock target = branch.getThenBlock();
+        Value cond = branch.getCond();
+        branch.remove();
+        new Jump(target, basicBlock);
+        // 条件不再被使用时一并删除，块可能因此变空，外层的空块链随之可以跳过
+        if ((cond instanceof Icmp || cond instanceof Fcmp) && cond.getUsedInfo().isEmpty())
+            ((Instr) cond).remove();
+        return true;
+    }
+
+    // basicBlock只有一条jump且没有phi时，让所有前驱直接跳到它的目标
+    private static boolean skipEmptyBlock(Function function, BasicBlock basicBlock) {
+        if (basicBlock.getInstrs().size() != 1 || !(basicBlock.getLast() instanceof Jump)
+                || basicBlock == function.getBasicBlocks().getFirst())
+            return false;
+        BasicBlock target = ((Jump) basicBlock.getLast()).getTargetBlock();
+        if (target == basicBlock)
+            return false;
+        // 前驱已经是target的前驱时，两条边在target的phi中无法区分，只有phi在两条边上的值都相同时才能跳过，
+        // 跳过后前驱的两个分支目标相同，由foldBranch改为无条件跳转
+        for (BasicBlock prec : basicBlock.precBBlocks) {
+            if (target.precBBlocks.contains(prec) && !samePhiValues(target, basicBlock, prec))
+                return false;
+        }
+        for (Instr instr : target.getInstrs()) {
+            if (!(instr instanceof Phi))
+                break;
+            Phi phi = (Phi) instr;
+            Value value = phi.getIncomingValue(basicBlock);
+            phi.removeIncoming(basicBlock);
+            for (BasicBlock prec : basicBlock.precBBlocks) {
+                if (!target.precBBlocks.contains(prec))
+                    phi.addIncoming(value, prec);
+            }
+        }
+        for (BasicBlock prec : basicBlock.precBBlocks) {
+            prec.getLast().replaceUse(basicBlock, target);
+            prec.succBBlocks.set(prec.succBBlocks.indexOf(basicBlock), target);
+            if (!target.precBBlocks.contains(prec))
+                target.precBBlocks.add(prec);
+        }
+        target.precBBlocks.remove(basicBlock);
+        removeBlock(function, basicBlock);
+        return true;
+    }
+
+    private static boolean samePhiValues(BasicBlock target, BasicBlock a, BasicBlock b) {
+        for (Instr instr : target.getInstrs()) {
+            if (!(instr instanceof Phi))
+                break;
+            Phi phi = (Phi) instr;
+            if (phi.getIncomingValue(a) != phi.getIncomingValue(b))
+                return false;
+        }
+        return true;
+    }
+
+    // basicBlock的唯一后继只有它一个前驱时，把后继的指令移过来并删除后继
+    private static boolean mergeSucc(Function function, BasicBlock basicBlock) {
+        if (!(basicBlock.getLast() instanceof Jump))
+            return false;
+        BasicBlock succ = ((Jump) basicBlock.getLast()).getTargetBlock();
+        if (succ == basicBlock || succ.precBBlocks.size() != 1 || succ == function.getBasicBlocks().getFirst())
+            return false;
+        basicBlock.getLast().remove();
+        Iterator<Instr> iter = succ.getInstrs().iterator();
+        while (iter.hasNext()) {
+            Instr instr = iter.next();
+            if (!(instr instanceof Phi))
+                break;
+            instr.replaceAllUseWith(instr.getUse(0));
+            iter.remove();
+            instr.dropAllUses();
+        }
+        basicBlock.spliceInstrs(succ.getInstrs().getFirst());
+        for (BasicBlock next : succ.succBBlocks) {
+            for (Instr instr : next.getInstrs()) {
+                if (!(instr instanceof Phi))
+                    break;
+                int idx = ((Phi) instr).getIncomingBlocks().indexOf(succ);
+                if (idx >= 0)
+                    ((Phi) instr).setIncomingBlock(idx, basicBlock);
+            }
+            next.precBBlocks.set(next.precBBlocks.indexOf(succ), basicBlock);
+        }
+        basicBlock.succBBlocks.clear();
+        basicBlock.succBBlocks.addAll(succ.succBBlocks);
+        removeBlock(function, succ);
+        return true;
+    }
+
+    private static void removeBlock(Function function, BasicBlock basicBlock) {
+        ArrayList<Instr> instrs = new ArrayList<>();
+        for (Instr instr : basicBlock.getInstrs()) {
+            instrs.add(instr);
+        }
+        for (Instr instr : instrs) {
+            instr.remove();
+        }
+        basicBlock.precBBlocks.clear();
+        basicBlock.succBBlocks.clear();
+        function.removeBlock(basicBlock);
+    }
+}
@@ -5,17 +5,31 @@ public class Arg {
     public final String srcFile;
     public final String targetFile;
     public final String llvmFile;
-    public static boolean opt = false;
+    public final boolean opt;
+    public final int inlineThreshold; // 被内联函数的最大代价(指令数)
+    public final int threads; // 并行处理各函数的线程数，0表示使用公共线程池，1表示不并行
+    public final String timeReport; // null表示不统计，空串表示在标准错误上打印表格，否则为JSON文件名
+    public final String cacheDir; // 按函数缓存输出的目录，null表示不使用缓存
 
-    public Arg (String srcFile,String targetFile,String llvmFile){
+    public Arg (String srcFile,String targetFile,String llvmFile,boolean opt,int inlineThreshold,int threads,String timeReport,String cacheDir){
         this.srcFile =srcFile;
         this.targetFile = targetFile;
         this.llvmFile = llvmFile;
+        this.opt = opt;
+        this.inlineThreshold = inlineThreshold;
+        this.threads = threads;
+        this.timeReport = timeReport;
+        this.cacheDir = cacheDir;
     }
     public static Arg parse(String[] args){
         String src = "";
         String target = "";
         String llvm = "";
+        boolean opt = false;
+        int inlineThreshold = 60;
+        int threads = 0;
+        String timeReport = null;
+        String cacheDir = null;
 
         for(int i = 0; i < args.length; i++){
 
@@ -27,6 +41,31 @@ public class Arg {
                 continue;
             }
 
+            if(args[i].startsWith("-inline-threshold=")){
+                inlineThreshold = Integer.parseInt(args[i].substring("-inline-threshold=".length()));
+                continue;
+            }
+
+            if(args[i].startsWith("-threads=")){
+                threads = Integer.parseInt(args[i].substring("-threads=".length()));
+                continue;
+            }
+
+            if(args[i].equals("-time-report")){
+                timeReport = "";
+                continue;
+            }
+
+            if(args[i].startsWith("-time-report=")){
+                timeReport = args[i].substring("-time-report=".length());
+                continue;
+            }
+
+            if(args[i].startsWith("-cache=")){
+                cacheDir = args[i].substring("-cache=".length());
+                continue;
+            }
+
             if(args[i].equals("-S")){
                 if(i + 2 < args.length && args[i + 1].equals("-o")){
                     target = args[i + 2];
@@ -56,11 +95,15 @@ public class Arg {
             printHelp();
             throw new RuntimeException("source file should be specified.");
         }
-        Arg arg = new Arg(src,target,llvm);
+        Arg arg = new Arg(src,target,llvm,opt,inlineThreshold,threads,timeReport,cacheDir);
         return arg;
     }
 
     public static void printHelp() {
         System.err.println("Usage: compiler -S -o filename filename");
+        System.err.println("       -threads=N    number of threads for per-function passes (0: common pool, 1: sequential)");
+        System.err.println("       -time-report[=file]    per-stage time, allocation and IR size, as a table on stderr or JSON to file");
+        System.err.println("       -cache=dir    reuse per-function LLVM/assembly output of unchanged functions from dir");
+        System.err.println("       compiler -daemon[=port]    read one command line per job from stdin or 127.0.0.1:port");
     }
 }
@@ -0,0 +1,108 @@
+package util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 流式输出：字符直接编码进一块复用的缓冲区，缓冲区满或flush时整块写出，
+ * 输出到文件时通过FileChannel写入，避免先拼出整个函数的字符串再逐个getBytes
+ * 输出内容基本都是ASCII，非ASCII字符按UTF-8编码
+ */
+public class Emitter {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    private int pos = 0;
+    private OutputStream out;
+    private FileChannel channel;
+
+    public Emitter() {
+    }
+
+    public Emitter(OutputStream out) {
+        open(out);
+    }
+
+    // 切换输出目标，缓冲区继续复用
+    public void open(OutputStream out) {
+        this.out = out;
+        this.channel = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : null;
+        this.pos = 0;
+    }
+
+    public Emitter print(String str) {
+        int len = str.length();
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                if (pos == BUFFER_SIZE)
+                    flushBuffer();
+                buffer[pos++] = (byte) c;
+            } else {
+                print(str.substring(i, i + 1).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return this;
+    }
+
+    public Emitter print(char c) {
+        if (c >= 0x80)
+            return print(String.valueOf(c));
+        if (pos == BUFFER_SIZE)
+            flushBuffer();
+        buffer[pos++] = (byte) c;
+        return this;
+    }
+
+    public Emitter print(int val) {
+        return print(Integer.toString(val));
+    }
+
+    public Emitter println(String str) {
+        return print(str).print('\n');
+    }
+
+    public Emitter println() {
+        return print('\n');
+    }
+
+    private void print(byte[] bytes) {
+        for (byte b : bytes) {
+            if (pos == BUFFER_SIZE)
+                flushBuffer();
+            buffer[pos++] = b;
+        }
+    }
+
+    private void flushBuffer() {
+        try {
+            if (channel != null) {
+                byteBuffer.clear().limit(pos);
+                while (byteBuffer.hasRemaining()) {
+                    channel.write(byteBuffer);
+                }
+            } else {
+                out.write(buffer, 0, pos);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        pos = 0;
+    }
+
+    // 写出缓冲区中剩余的内容，输出结束时必须调用
+    public void flush() {
+        flushBuffer();
+        try {
+            if (channel == null)
+                out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * 以函数内的稠密编号(指令/形参编号、基本块编号、虚拟寄存器编号)为键的表，用数组存储
+ * 查找不需要装箱和哈希，键超出当前容量时自动扩容，没有值的位置为null
+ */
+public class IntMap<V> {
+    private Object[] values;
+    private int size = 0;
+
+    public IntMap() {
+        this(16);
+    }
+
+    public IntMap(int capacity) {
+        values = new Object[Math.max(capacity, 1)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        return key >= 0 && key < values.length ? (V) values[key] : null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        assert key >= 0;
+        if (value == null)
+            return remove(key);
+        if (key >= values.length)
+            values = Arrays.copyOf(values, Math.max(key + 1, values.length * 2));
+        V old = (V) values[key];
+        values[key] = value;
+        if (old == null)
+            size++;
+        return old;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key < 0 || key >= values.length)
+            return null;
+        V old = (V) values[key];
+        values[key] = null;
+        if (old != null)
+            size--;
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+}
@@ -1,85 +1,139 @@
 package util;
 
-import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
-import java.util.Spliterator;
-import java.util.function.Consumer;
+import java.util.NoSuchElementException;
 
 /**
- * 双端链表
+ * 侵入式双端链表，节点记录所在的链表，插入、删除、移动都是O(1)
+ * 首尾各有一个哨兵节点，getFirst/getLast直接取哨兵的相邻节点
+ * 遍历时可以在任意位置插入节点，也可以删除其他节点；当前节点只能通过迭代器删除，
+ * 若被其他方式删除或移到别的链表，下一次访问迭代器时抛出ConcurrentModificationException
  */
 public class MyList<E extends MyNode> implements Iterable<E> {
 
-    public MyNode head;
-    public MyNode tail;
-    public int size = 0;
+    private final MyNode head;
+    private final MyNode tail;
+    private int size = 0;
 
     public  MyList(){
         head = new MyNode();
         tail = new MyNode();
         head.setNext(tail);
         tail.setPrev(head);
-        size = 0;
     }
 
     public void clear(){
+        MyNode cur = head.getNext();
+        while (cur != tail) {
+            MyNode next = cur.getNext();
+            unlinked(cur);
+            cur = next;
+        }
         head.setNext(tail);
         tail.setPrev(head);
         size = 0;
     }
 
+    @SuppressWarnings("unchecked")
     public E getFirst(){
         assert head.getNext() != tail;
         return (E) head.getNext();
     }
 
+    @SuppressWarnings("unchecked")
     public E getLast(){
         assert tail.getPrev() != head;
         return (E) tail.getPrev();
     }
 
-    public E get(int idx){
-        E cur = (E) head.getNext();
-        for(int i = 0; i < size; i++){
-            if(i == idx)
-                return cur;
-            cur = (E) cur.getNext();
-        }
-        return cur;
-    }
-
     public void insertHead(E node){
-        node.setNext(head.getNext());
-        node.setPrev(head);
-        head.getNext().setPrev(node);
-        head.setNext(node);
-        size ++;
+        link(head, node);
     }
 
     public void insertTail(E node){
-        node.setNext(tail);
-        node.setPrev(tail.getPrev());
-        tail.getPrev().setNext(node);
-        tail.setPrev(node);
-        size ++;
+        link(tail.getPrev(), node);
     }
 
     public void insertAfter(E p, E node){
-        node.setNext(p.getNext());
-        node.setPrev(p);
-        p.getNext().setPrev(node);
-        p.setNext(node);
-        size ++;
+        assert p.getList() == this;
+        link(p, node);
     }
 
     public void insertBefore(E p, E node){
-        node.setNext(p);
-        node.setPrev(p.getPrev());
-        p.getPrev().setNext(node);
-        p.setPrev(node);
+        assert p.getList() == this;
+        link(p.getPrev(), node);
+    }
+
+    // 把node插入到prev之后，node不能已经在某个链表中
+    private void link(MyNode prev, E node) {
+        assert !node.isLinked() : "node is already in a list";
+        MyNode next = prev.getNext();
+        node.setPrev(prev);
+        node.setNext(next);
+        next.setPrev(node);
+        prev.setNext(node);
+        node.setList(this);
         size ++;
     }
 
+    public void remove(E node){
+        assert node.getList() == this : "node is not in this list";
+        node.getPrev().setNext(node.getNext());
+        node.getNext().setPrev(node.getPrev());
+        unlinked(node);
+        size --;
+    }
+
+    private static void unlinked(MyNode node) {
+        node.setPrev(null);
+        node.setNext(null);
+        node.setList(null);
+    }
+
+    // 把node从所在链表中取下，插入到当前链表的pos之前
+    @SuppressWarnings("unchecked")
+    public void moveBefore(E pos, E node){
+        ((MyList<E>) node.getList()).remove(node);
+        insertBefore(pos, node);
+    }
+
+    // 把node从所在链表中取下，插入到当前链表末尾
+    @SuppressWarnings("unchecked")
+    public void moveToTail(E node){
+        ((MyList<E>) node.getList()).remove(node);
+        insertTail(node);
+    }
+
+    /**
+     * 把first及其之后的所有节点整体接到当前链表末尾，链的拆接是O(1)的，
+     * 只有更新被移动节点所在的链表需要逐个访问
+     */
+    @SuppressWarnings("unchecked")
+    public void spliceTail(E first){
+        MyList<E> from = (MyList<E>) first.getList();
+        assert from != null && from != this;
+        MyNode last = from.tail.getPrev();
+        // 从原链表中断开
+        first.getPrev().setNext(from.tail);
+        from.tail.setPrev(first.getPrev());
+        // 接到当前链表末尾
+        MyNode prev = tail.getPrev();
+        prev.setNext(first);
+        first.setPrev(prev);
+        last.setNext(tail);
+        tail.setPrev(last);
+        for (MyNode cur = first; cur != tail; cur = cur.getNext()) {
+            cur.setList(this);
+            from.size --;
+            size ++;
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
     public int size() {
         return size;
     }
@@ -91,23 +145,42 @@ public class MyList<E extends MyNode> implements Iterable<E> {
 
     class MyIterator implements Iterator<E>{
 
-        MyNode cur = head;
+        MyNode cur = head; // 上一次返回的节点
+        boolean removable = false;
+
+        private void check() {
+            if (cur != head && cur.getList() != MyList.this)
+                throw new ConcurrentModificationException("current node was removed outside the iterator");
+        }
+
         @Override
         public boolean hasNext() {
+            check();
             return cur.getNext() != tail;
         }
 
         @Override
+        @SuppressWarnings("unchecked")
         public E next() {
+            check();
+            if (cur.getNext() == tail)
+                throw new NoSuchElementException();
             cur = cur.getNext();
+            removable = true;
             return (E) cur;
         }
 
+        // 删除上一次返回的节点，之后从它的前驱继续遍历
         @Override
+        @SuppressWarnings("unchecked")
         public void remove(){
-            cur.getPrev().setNext(cur.getNext());
-            cur.getNext().setPrev(cur.getPrev());
-            size --;
+            if (!removable)
+                throw new IllegalStateException();
+            check();
+            MyNode prev = cur.getPrev();
+            MyList.this.remove((E) cur);
+            cur = prev;
+            removable = false;
         }
     }
 }
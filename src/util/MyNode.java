@@ -1,14 +1,18 @@
 package util;
 
+/**
+ * 侵入式链表的节点，记录所在的链表，不在任何链表中时前驱、后继和链表都为null
+ */
 public class MyNode {
     private MyNode next;
     private MyNode prev;
+    private MyList<?> list;
 
     public MyNode getPrev(){
         return this.prev;
     }
 
-    public void setPrev(MyNode prev){
+    void setPrev(MyNode prev){
         this.prev = prev;
     }
 
@@ -16,8 +20,20 @@ public class MyNode {
         return this.next;
     }
 
-    public void setNext(MyNode next){
+    void setNext(MyNode next){
         this.next = next;
     }
 
+    // 所在的链表
+    public MyList<?> getList() {
+        return list;
+    }
+
+    void setList(MyList<?> list) {
+        this.list = list;
+    }
+
+    public boolean isLinked() {
+        return list != null;
+    }
 }
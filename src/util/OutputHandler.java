@@ -3,12 +3,9 @@ package util;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 
 public class OutputHandler {
     private static final OutputHandler outputHandler = new OutputHandler();
-    private static ArrayList<String> riscvStringList = new ArrayList<>();
-    private static ArrayList<String> llvmStringList = new ArrayList<>();
 
     private OutputHandler() {
     }
@@ -50,58 +47,4 @@ public class OutputHandler {
             e.printStackTrace();
         }
     }
-
-    public static void addRiscvString(String str) {
-        riscvStringList.add(str);
-    }
-
-    public static void addLlvmString(String str) {
-        llvmStringList.add(str);
-    }
-
-    public static void outputRiscvString(OutputStream outputStream) {
-        for (String str : riscvStringList) {
-            output2Stream(str, outputStream);
-        }
-    }
-
-    public static void outputLlvmString(OutputStream outputStream) {
-        for (String str : llvmStringList) {
-            output2Stream(str, outputStream);
-        }
-    }
-
-    public static void clearRiscvString() {
-        riscvStringList.clear();
-    }
-
-    public static void clearLlvmString() {
-        llvmStringList.clear();
-    }
-
-    public static void main(String[] args) {
-        FileOutputStream fileOutputStream = OutputHandler.getOutputFile("test2.txt");
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("hello world");
-        String str = "hello world";
-        OutputHandler.output2Stream(str, fileOutputStream);
-
-        OutputHandler.addLlvmString(str);
-        OutputHandler.addLlvmString(str);
-        OutputHandler.addLlvmString(str);
-
-        OutputHandler.outputLlvmString(fileOutputStream);
-        OutputHandler.clearLlvmString();
-        OutputHandler.outputLlvmString(fileOutputStream);
-
-        OutputHandler.addRiscvString(str);
-        OutputHandler.addRiscvString(str);
-        OutputHandler.addRiscvString(str);
-
-        OutputHandler.outputRiscvString(fileOutputStream);
-        OutputHandler.clearRiscvString();
-        OutputHandler.outputRiscvString(fileOutputStream);
-
-        OutputHandler.closeOutputFile(fileOutputStream);
-    }
 }
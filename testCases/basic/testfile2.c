@@ -0,0 +1,25 @@
+int main() {
+    int n = getint();
+    int x;
+    int y;
+    int t;
+    if (n > 0) {
+        x = n * 3;
+    }
+    if (n > 0) {
+        y = x + 1;
+    } else {
+        y = 0;
+    }
+    int i = 0;
+    while (i < n) {
+        if (i > 0) {
+            y = y + t;
+        }
+        t = i * 2;
+        i = i + 1;
+    }
+    putint(y);
+    putch(10);
+    return 0;
+}
@@ -0,0 +1,23 @@
+int main() {
+    int a = getint();
+    int b = getint();
+    int x = a * b + 3;
+    int r;
+    if (a > b) {
+        r = a * b + 3;
+        if (a - b > 2) {
+            r = r + (a * b + 3) / 2;
+        }
+    } else {
+        r = (a * b + 3) * 2 + (a - b);
+    }
+    int i = 0;
+    int s = 0;
+    while (i < a) {
+        s = s + (a * b + 3) - x + i;
+        i = i + 1;
+    }
+    putint(x + r + s);
+    putch(10);
+    return 0;
+}
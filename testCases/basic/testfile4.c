@@ -0,0 +1,22 @@
+int main() {
+    int n = getint();
+    int i = 0;
+    int s = 0;
+    int k = 3;
+    int c = 1;
+    while (i < n) {
+        if (k * 2 == 6) {
+            s = s + i;
+        } else {
+            s = s - i;
+        }
+        if (c != 1) {
+            s = s * 100;
+        }
+        c = 1;
+        i = i + 1;
+    }
+    putint(s);
+    putch(10);
+    return 0;
+}
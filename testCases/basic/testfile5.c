@@ -0,0 +1,17 @@
+int a[10];
+
+int main() {
+    int n = getint();
+    int i = 0;
+    int s = 0;
+    a[0] = 1;
+    while (i < n) {
+        s = s + a[0] + a[2];
+        a[0] = a[0] + 1;
+        a[i % 10] = i;
+        i = i + 1;
+    }
+    putint(s);
+    putch(10);
+    return 0;
+}
@@ -0,0 +1,25 @@
+int classify(int x, int mode) {
+    if (mode == 0) {
+        return x;
+    }
+    if (mode == 1) {
+        return x * 2;
+    }
+    if (x < 0) {
+        return -x;
+    }
+    return x + mode;
+}
+
+int main() {
+    int v = getint();
+    putint(classify(v, 0));
+    putch(32);
+    putint(classify(v, 1));
+    putch(32);
+    putint(classify(v, 7));
+    putch(32);
+    putint(classify(-v, 5));
+    putch(10);
+    return 0;
+}
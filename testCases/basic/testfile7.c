@@ -0,0 +1,22 @@
+int main() {
+    int n = getint();
+    int unused = n * 5;
+    int r = 0;
+    if (n > 0) {
+    } else {
+    }
+    if (n > 1) {
+        if (n > 2) {
+        }
+    }
+    while (0) {
+        r = r + 1;
+    }
+    if (n > 3) {
+        r = 1;
+    } else {
+    }
+    putint(r);
+    putch(10);
+    return 0;
+}